@@ -0,0 +1,44 @@
+package aspet_simple_bank.actuator;
+
+import aspet_simple_bank.model.client.dto.VelocityLimitsDTO;
+import aspet_simple_bank.service.VelocityGuard;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Замена лимитов без перезапуска через actuator: POST /actuator/velocity.
+ * По умолчанию эндпоинт не опубликован. Его включают вместе с отдельным портом управления,
+ * закрытым от клиентов: management.server.port и management.endpoints.web.exposure.include=velocity
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "velocity")
+public class VelocityLimitsEndpoint {
+
+    private final VelocityGuard velocityGuard;
+
+    @ReadOperation
+    public VelocityLimitsDTO limits() {
+        return velocityGuard.getLimits();
+    }
+
+    /**
+     * @param maxTransfersPerMinute - новый лимит числа списаний в минуту, 0 отключает лимит
+     * @param maxAmountPerHour - новый лимит суммы списаний в час, 0 отключает лимит
+     * @return примененные лимиты
+     * @throws InvalidEndpointRequestException если лимит отрицательный, actuator ответит 400
+     */
+    @WriteOperation
+    public VelocityLimitsDTO updateLimits(int maxTransfersPerMinute, double maxAmountPerHour) {
+        try {
+            velocityGuard.updateLimits(new VelocityLimitsDTO(maxTransfersPerMinute, maxAmountPerHour));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+        return velocityGuard.getLimits();
+    }
+}
@@ -3,15 +3,23 @@ package aspet_simple_bank.controller;
 import aspet_simple_bank.exceptions.BadRequestException;
 import aspet_simple_bank.model.client.domain_model.Account;
 import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.model.client.dto.AccountSearchDTO;
 import aspet_simple_bank.model.client.factory.AccountDTOFactory;
+import aspet_simple_bank.service.AccountChangeStream;
+import aspet_simple_bank.service.AccountNameIndex;
 import aspet_simple_bank.service.AccountService;
+import aspet_simple_bank.service.LedgerVersion;
+import aspet_simple_bank.sharding.CrossShardTransferService;
+import aspet_simple_bank.sharding.ShardRing;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Optional;
@@ -21,21 +29,122 @@ import java.util.Optional;
 @Tag(name = "AccountController", description = "Some operations with deposit")
 public class AccountController {
 
+    private static final int MAX_SEARCH_LIMIT = 100;
+
     private final AccountService accountService;
     private final AccountDTOFactory accountDTOFactory;
+    private final AccountChangeStream accountChangeStream;
+    private final LedgerVersion ledgerVersion;
+    private final ShardRing shardRing;
+    private final CrossShardTransferService crossShardTransferService;
+    private final AccountNameIndex accountNameIndex;
 
     /**
-     * Метод для получения списка аккаунтов
-     * @return List с перечнем аккаунтов
+     * Метод для получения списка аккаунтов.
+     * При шардировании список содержит только аккаунты экземпляра, который обслужил запрос
+     * @param ifNoneMatch - ETag, полученный клиентом ранее
+     * @return List с перечнем аккаунтов или статус 304, если версия леджера не изменилась
      */
     @Operation(summary = "Get all accounts with name and balance")
     @GetMapping("/api/accounts")
-    public ResponseEntity<List<AccountDTO>> getAllAccounts() {
+    public ResponseEntity<List<AccountDTO>> getAllAccounts(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        String etag = ledgerVersion.etag();
+        if (etagMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
         return ResponseEntity.ok()
+                .eTag(etag)
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(this.accountService.getAccounts());
     }
 
+    /**
+     * Метод для получения одного аккаунта
+     * @param name - имя аккаунта
+     * @param ifNoneMatch - ETag, полученный клиентом ранее
+     * @return аккаунт или статус 304, если версия аккаунта не изменилась.
+     * Для аккаунта без версии условие не проверяется, и сервис вернет 404, если аккаунта нет
+     */
+    @Operation(summary = "Get account by name")
+    @GetMapping("/api/accounts/{name}")
+    public ResponseEntity<AccountDTO> getAccount(
+            @PathVariable("name") String name,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        String etag = ledgerVersion.accountEtag(name);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        AccountDTO account = this.accountService.getAccount(name);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (etag != null) {
+            response.eTag(etag);
+        }
+        return response
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(account);
+    }
+
+    /**
+     * Метод для поиска аккаунтов по началу имени без учета регистра.
+     * При шардировании ищет только среди аккаунтов экземпляра, который обслужил запрос.
+     * Литеральные пути search и stream предпочитаются шаблону GET /api/accounts/{name},
+     * поэтому аккаунты с такими именами через тот метод недоступны
+     * @param prefix - начало имени
+     * @param fuzzy - допустимое число опечаток в начале имени, от 0 до 2
+     * @param limit - размер страницы, не больше 100
+     * @param offset - сколько имен пропустить
+     * @return имена аккаунтов: сначала точные совпадения, затем с опечатками, внутри - по алфавиту
+     */
+    @Operation(summary = "Search account names by prefix with optional typos")
+    @GetMapping("/api/accounts/search")
+    public ResponseEntity<AccountSearchDTO> searchAccounts(
+            @RequestParam(value = "prefix", required = true) String prefix,
+            @RequestParam(value = "fuzzy", required = false, defaultValue = "0") int fuzzy,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit,
+            @RequestParam(value = "offset", required = false, defaultValue = "0") int offset) {
+
+        if(fuzzy < 0 || fuzzy > AccountNameIndex.MAX_FUZZY) {
+            throw new BadRequestException("Fuzzy must be between 0 and " + AccountNameIndex.MAX_FUZZY);
+        }
+        if(limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_SEARCH_LIMIT);
+        }
+        if(offset < 0) {
+            throw new BadRequestException("Offset can`t be negative");
+        }
+        List<String> names = accountNameIndex.search(prefix, fuzzy, offset, limit + 1);
+        boolean hasMore = names.size() > limit;
+        return ResponseEntity.ok(AccountSearchDTO.builder()
+                .prefix(prefix)
+                .fuzzy(fuzzy)
+                .offset(offset)
+                .limit(limit)
+                .names(hasMore ? names.subList(0, limit) : names)
+                .hasMore(hasMore)
+                .build());
+    }
+
+    /**
+     * Метод для подписки на изменения балансов вместо периодического опроса /api/accounts.
+     * При шардировании поток содержит только изменения аккаунтов этого экземпляра
+     * @param names - имена аккаунтов, по которым нужны изменения; если не заданы - по всем аккаунтам
+     * @param lastEventId - идентификатор последнего полученного события, передается браузером при переподключении
+     * @param since - то же, что lastEventId, для клиентов, которые не умеют задавать заголовок
+     * @return поток Server-Sent Events с событиями account (AccountDTO) и служебными resync / overflow
+     */
+    @Operation(summary = "Stream balance changes as Server-Sent Events")
+    @GetMapping(value = "/api/accounts/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAccountChanges(
+            @RequestParam(value = "name", required = false) List<String> names,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(value = "since", required = false) String since) {
+
+        return accountChangeStream.subscribe(names, lastEventId != null ? lastEventId : since);
+    }
+
     /**
      * Метод для создания аккаунта
      * @param incomeName - имя аккаунта
@@ -129,7 +238,7 @@ public class AccountController {
      * @param incomePinCode - пинкод аккаунта - отправителя перевода
      * @param remittance - сумма перевода
      * @see Optional использован для обработки null
-     * @return статус 200 - если перевод успешен
+     * @return статус 200 - если перевод успешен, 503 - если шард получателя недоступен
      */
     @Operation(summary = "Make transfer from one deposit to another")
     @PatchMapping("/api/transfer")
@@ -148,8 +257,32 @@ public class AccountController {
         if(remittance <= 0) {
             throw new BadRequestException("The remittance must have a positive balance");
         }
+        if(shardRing.isRemote(incomeNameTo)) {
+            return new ResponseEntity<>(
+                    crossShardTransferService.transfer(incomeNameFrom, incomeNameTo, incomePinCode, remittance),
+                    HttpStatus.OK);
+        }
         return new ResponseEntity<>(
                 accountService.transfer(incomeNameFrom, incomeNameTo, incomePinCode, remittance),
                 HttpStatus.OK);
     }
+
+    /**
+     * Проверяет заголовок If-None-Match, в том числе списки значений, слабые ETag и *
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,30 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.model.client.dto.ReconciliationReportDTO;
+import aspet_simple_bank.service.MoneyReconciler;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bank.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+@Tag(name = "ReconciliationController", description = "Money conservation checks")
+public class ReconciliationController {
+
+    private final MoneyReconciler moneyReconciler;
+
+    /**
+     * Метод для получения результата последней сверки
+     * @return отчет с расхождением и аккаунтами, по которым оно найдено
+     */
+    @Operation(summary = "Get the latest money conservation report")
+    @GetMapping("/api/reconciliation")
+    public ResponseEntity<ReconciliationReportDTO> getReport() {
+        return ResponseEntity.ok(moneyReconciler.getLastReport());
+    }
+}
@@ -0,0 +1,84 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.ForbiddenException;
+import aspet_simple_bank.sharding.CrossShardTransferService;
+import aspet_simple_bank.sharding.ShardClient;
+import io.swagger.v3.oas.annotations.Hidden;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Служебные методы участника межшардового перевода, вызываются только другими экземплярами.
+ * Контроллер регистрируется только при заданном bank.sharding.nodes, каждый вызов
+ * должен нести общий секрет кластера bank.sharding.secret
+ */
+@Hidden
+@RestController
+@ConditionalOnExpression("!'${bank.sharding.nodes:}'.trim().isEmpty()")
+public class ShardTransferController {
+
+    private final CrossShardTransferService crossShardTransferService;
+    private final byte[] secret;
+
+    public ShardTransferController(
+            CrossShardTransferService crossShardTransferService,
+            @Value("${bank.sharding.secret:}") String secret) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("bank.sharding.secret must be set when bank.sharding.nodes is set");
+        }
+        this.crossShardTransferService = crossShardTransferService;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("/internal/shard/transfers/{transferId}/prepare")
+    public ResponseEntity<Void> prepare(
+            @RequestHeader(value = ShardClient.SECRET_HEADER, required = false) String incomeSecret,
+            @PathVariable("transferId") String transferId,
+            @RequestParam(value = "nameFrom", required = true) String nameFrom,
+            @RequestParam(value = "nameTo", required = true) String nameTo,
+            @RequestParam(value = "amount", required = true) double amount) {
+
+        checkSecret(incomeSecret);
+        if(amount <= 0) {
+            throw new BadRequestException("The amount must be positive");
+        }
+        crossShardTransferService.prepare(transferId, nameFrom, nameTo, amount);
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/internal/shard/transfers/{transferId}/commit")
+    public ResponseEntity<Void> commit(
+            @RequestHeader(value = ShardClient.SECRET_HEADER, required = false) String incomeSecret,
+            @PathVariable("transferId") String transferId) {
+
+        checkSecret(incomeSecret);
+        crossShardTransferService.commit(transferId);
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/internal/shard/transfers/{transferId}/abort")
+    public ResponseEntity<Void> abort(
+            @RequestHeader(value = ShardClient.SECRET_HEADER, required = false) String incomeSecret,
+            @PathVariable("transferId") String transferId) {
+
+        checkSecret(incomeSecret);
+        crossShardTransferService.abort(transferId);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Сравнение за постоянное время, чтобы секрет нельзя было подобрать по времени ответа
+     */
+    private void checkSecret(String incomeSecret) {
+        if(incomeSecret == null
+                || !MessageDigest.isEqual(secret, incomeSecret.getBytes(StandardCharsets.UTF_8))) {
+            throw new ForbiddenException("Only shards of this cluster can call this method");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.model.client.dto.TieringReportDTO;
+import aspet_simple_bank.service.AccountTiering;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@Tag(name = "TieringController", description = "Hot and cold account storage")
+public class TieringController {
+
+    private final AccountTiering accountTiering;
+
+    /**
+     * Метод для получения состояния многоуровневого хранения
+     * @return размер горячего набора, холодных сегментов, освобожденная память и время возврата аккаунтов
+     */
+    @Operation(summary = "Get hot set size, cold storage size and fault-in latency")
+    @GetMapping("/api/tiering")
+    public ResponseEntity<TieringReportDTO> getReport() {
+        return ResponseEntity.ok(accountTiering.getReport());
+    }
+}
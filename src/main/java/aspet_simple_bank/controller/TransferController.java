@@ -0,0 +1,83 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.model.client.dto.TransferTicketDTO;
+import aspet_simple_bank.service.AsyncTransferPipeline;
+import aspet_simple_bank.sharding.ShardRing;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequiredArgsConstructor
+@Tag(name = "TransferController", description = "Asynchronous transfers with submission tickets")
+public class TransferController {
+
+    private static final long MAX_WAIT_MILLIS = 25_000L;
+
+    private final AsyncTransferPipeline asyncTransferPipeline;
+    private final ShardRing shardRing;
+
+    /**
+     * Метод для постановки перевода в очередь без ожидания результата
+     * @param incomeNameFrom - имя аккаунта - отправителя перевода
+     * @param incomeNameTo - имя аккаунта - получателя перевода
+     * @param incomePinCode - пинкод аккаунта - отправителя перевода
+     * @param remittance - сумма перевода
+     * @return статус 202 и идентификатор заявки, 429 - если очередь заполнена
+     */
+    @Operation(summary = "Queue transfer from one deposit to another and return a ticket")
+    @PostMapping("/api/transfers/async")
+    public ResponseEntity<TransferTicketDTO> submitTransfer(
+            @RequestParam(value = "nameFrom", required = true) String incomeNameFrom,
+            @RequestParam(value = "nameTo", required = true) String incomeNameTo,
+            @RequestParam(value = "pin_code", required = true) String incomePinCode,
+            @RequestParam(value = "remittance", required = true) double remittance) {
+
+        if(incomeNameFrom.trim().isEmpty() || incomeNameTo.trim().isEmpty()) {
+            throw new BadRequestException("Name fields can`t be empty");
+        }
+        if(incomePinCode.length() != 4) {
+            throw new BadRequestException("Pin code must contain four digits");
+        }
+        if(remittance <= 0) {
+            throw new BadRequestException("The remittance must have a positive balance");
+        }
+        if(shardRing.isRemote(incomeNameTo)) {
+            throw new BadRequestException("Transfers to another shard are available only via /api/transfer");
+        }
+        TransferTicketDTO ticket = asyncTransferPipeline.submit(incomeNameFrom, incomeNameTo, incomePinCode, remittance);
+        ticket.setTicket(shardRing.tagTicket(ticket.getTicket()));
+        return new ResponseEntity<>(ticket, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Метод для получения статуса заявки. При шардировании запрос пересылается экземпляру,
+     * который принял заявку, см. ShardRoutingInterceptor
+     * @param ticket - идентификатор заявки
+     * @param waitMillis - сколько ждать окончательного статуса; 0 - вернуть текущий сразу
+     * @return статус заявки
+     */
+    @Operation(summary = "Get or wait for the status of a queued transfer")
+    @GetMapping("/api/transfers/async/{ticket}")
+    public CompletableFuture<ResponseEntity<TransferTicketDTO>> getTransferStatus(
+            @PathVariable("ticket") String ticket,
+            @RequestParam(value = "waitMillis", required = false, defaultValue = "0") long waitMillis) {
+
+        String localTicket = shardRing.localTicket(ticket);
+        if(waitMillis <= 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(
+                    new TransferTicketDTO(ticket, asyncTransferPipeline.getStatus(localTicket).getStatus())));
+        }
+        return asyncTransferPipeline.awaitStatus(localTicket)
+                .thenApply(TransferTicketDTO::getStatus)
+                .completeOnTimeout(TransferTicketDTO.Status.QUEUED, Math.min(waitMillis, MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS)
+                .thenApply(status -> ResponseEntity.ok(new TransferTicketDTO(ticket, status)));
+    }
+}
@@ -0,0 +1,30 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.model.client.dto.VelocityLimitsDTO;
+import aspet_simple_bank.service.VelocityGuard;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Лимиты доступны здесь только для чтения, заменить их можно через VelocityLimitsEndpoint
+ */
+@RestController
+@RequiredArgsConstructor
+@Tag(name = "VelocityController", description = "Fraud velocity limits on withdrawals and transfers")
+public class VelocityController {
+
+    private final VelocityGuard velocityGuard;
+
+    /**
+     * Метод для получения действующих лимитов
+     * @return лимиты частоты списаний
+     */
+    @Operation(summary = "Get current velocity limits")
+    @GetMapping("/api/velocity/limits")
+    public ResponseEntity<VelocityLimitsDTO> getLimits() {
+        return ResponseEntity.ok(velocityGuard.getLimits());
+    }
+}
@@ -0,0 +1,12 @@
+package aspet_simple_bank.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ShardUnavailableException extends RuntimeException {
+
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+}
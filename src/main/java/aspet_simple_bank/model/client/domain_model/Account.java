@@ -3,6 +3,7 @@ package aspet_simple_bank.model.client.domain_model;
 import lombok.*;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 @Entity
 @Table(name = "account")
@@ -20,9 +21,32 @@ public class Account {
     @Column(nullable = false)
     private String name;
 
-    @Column(nullable = false, length = 4)
+    /**
+     * Соленый хэш пинкода в формате PinCodeEncoder, открытый пинкод не хранится
+     */
+    @Column(nullable = false, length = 128)
     private String pinCode;
 
     @Column(nullable = false)
     private double balance;
+
+    /**
+     * Время последней записи в аккаунт, по нему давно не используемые аккаунты вытесняются в холодное хранилище
+     */
+    private Instant lastActivity;
+
+    /**
+     * Аккаунт, возвращенный из холодного хранилища, сохраняет свое время последней записи
+     */
+    @PrePersist
+    void created() {
+        if (lastActivity == null) {
+            lastActivity = Instant.now();
+        }
+    }
+
+    @PreUpdate
+    void touch() {
+        lastActivity = Instant.now();
+    }
 }
@@ -0,0 +1,69 @@
+package aspet_simple_bank.model.client.domain_model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Журнал межшардового перевода. Запись создается на шарде отправителя (SOURCE)
+ * и на шарде получателя (TARGET), чтобы перевод, прерванный сбоем связи или зависшим
+ * координатором, можно было довести или откатить. Журнал хранится в той же базе H2 в памяти,
+ * что и балансы, поэтому падение экземпляра он не переживает: вместе с ним теряются
+ * и аккаунты шарда, и такие сбои журнал не покрывает
+ */
+@Entity
+@Table(name = "transfer_intent")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferIntent {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Role role;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state;
+
+    @Column(nullable = false)
+    private String nameFrom;
+
+    @Column(nullable = false)
+    private String nameTo;
+
+    @Column(nullable = false)
+    private double amount;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    public enum Role {
+        SOURCE,
+        TARGET
+    }
+
+    public enum State {
+        /**
+         * Сумма списана у отправителя, получатель еще не подтвердил готовность
+         */
+        RESERVED,
+        /**
+         * Получатель готов зачислить сумму
+         */
+        PREPARED,
+        /**
+         * Решение о фиксации принято, осталось зачислить сумму получателю
+         */
+        COMMITTING,
+        COMMITTED,
+        ABORTED
+    }
+}
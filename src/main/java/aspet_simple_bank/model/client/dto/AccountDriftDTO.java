@@ -0,0 +1,14 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountDriftDTO {
+
+    private String name;
+    private double expectedBalance;
+    private double actualBalance;
+}
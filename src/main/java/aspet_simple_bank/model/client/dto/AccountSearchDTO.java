@@ -0,0 +1,26 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Страница результатов поиска аккаунтов по имени
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountSearchDTO {
+
+    private String prefix;
+    private int fuzzy;
+    private int offset;
+    private int limit;
+    private List<String> names;
+
+    /**
+     * Есть ли результаты после этой страницы
+     */
+    private boolean hasMore;
+}
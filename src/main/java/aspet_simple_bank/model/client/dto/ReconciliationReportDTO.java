@@ -0,0 +1,32 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Результат последнего прохода сверки: ожидаемая сумма денег по движениям
+ * против суммы балансов в леджере
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReconciliationReportDTO {
+
+    private long runs;
+    private Instant startedAt;
+    private long durationMillis;
+    private int accountsScanned;
+
+    /**
+     * Аккаунты, которые менялись во время чтения и будут проверены в следующем проходе
+     */
+    private int accountsSkipped;
+
+    private double expectedTotal;
+    private double ledgerTotal;
+    private double drift;
+    private List<AccountDriftDTO> driftAccounts;
+}
@@ -0,0 +1,37 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Состояние многоуровневого хранения: горячий набор в леджере и холодные сегменты
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TieringReportDTO {
+
+    private long hotAccounts;
+    private int coldAccounts;
+    private int coldSegments;
+
+    /**
+     * Размер сжатых сегментов на диске
+     */
+    private long coldBytes;
+
+    /**
+     * Оценка памяти, освобожденной в леджере холодными аккаунтами
+     */
+    private long reclaimedBytes;
+
+    private long faultIns;
+    private double faultInMeanMillis;
+    private double faultInMaxMillis;
+
+    private Instant lastRunAt;
+    private int lastRunEvicted;
+    private long lastRunMillis;
+}
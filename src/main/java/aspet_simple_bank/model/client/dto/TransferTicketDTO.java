@@ -0,0 +1,37 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferTicketDTO {
+
+    /**
+     * Случайный идентификатор заявки, при шардировании с номером принявшего ее экземпляра
+     */
+    private String ticket;
+    private Status status;
+
+    public enum Status {
+        QUEUED,
+        COMPLETED,
+        REJECTED_UNKNOWN_ACCOUNT,
+        REJECTED_INSUFFICIENT_FUNDS,
+        REJECTED_VELOCITY_LIMIT,
+        FAILED,
+        /**
+         * Статус вытеснен более новыми заявками
+         */
+        EXPIRED,
+        /**
+         * Заявка с таким идентификатором не выдавалась
+         */
+        UNKNOWN;
+
+        public boolean isFinal() {
+            return this != QUEUED;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package aspet_simple_bank.model.client.dto;
+
+import lombok.*;
+
+/**
+ * Лимиты частоты списаний с одного аккаунта, 0 - лимит не действует
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VelocityLimitsDTO {
+
+    private int maxTransfersPerMinute;
+    private double maxAmountPerHour;
+}
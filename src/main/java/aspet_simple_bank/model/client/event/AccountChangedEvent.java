@@ -0,0 +1,42 @@
+package aspet_simple_bank.model.client.event;
+
+import lombok.Value;
+
+/**
+ * Событие изменения аккаунта. Публикуется сервисом внутри транзакции,
+ * слушатели получают его только после успешного коммита
+ */
+@Value
+public class AccountChangedEvent {
+
+    String name;
+
+    /**
+     * Баланс аккаунта после изменения
+     */
+    double balance;
+
+    /**
+     * Сумма, на которую изменился баланс (отрицательная при списании)
+     */
+    double delta;
+
+    ChangeType type;
+
+    /**
+     * Номер изменения, взятый под блокировкой строки аккаунта, см. ChangeSequence
+     */
+    long sequence;
+
+    public enum ChangeType {
+        CREATED,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER_OUT,
+        TRANSFER_IN,
+        /**
+         * Возврат суммы, списанной под межшардовый перевод, который был отменен
+         */
+        TRANSFER_REFUND
+    }
+}
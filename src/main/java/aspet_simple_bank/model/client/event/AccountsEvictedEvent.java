@@ -0,0 +1,14 @@
+package aspet_simple_bank.model.client.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Аккаунты перенесены из леджера в холодное хранилище. Публикуется внутри транзакции переноса
+ */
+@Value
+public class AccountsEvictedEvent {
+
+    List<String> names;
+}
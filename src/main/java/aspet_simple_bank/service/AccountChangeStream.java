@@ -0,0 +1,297 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Поток изменений балансов для подписчиков Server-Sent Events.
+ * Идентификатор события - эпоха запуска и номер изменения из ChangeSequence, взятый под блокировкой
+ * строки аккаунта. Номера после перезапуска начинаются заново, а эпоха отличает их от прежних.
+ * Слушатель после коммита может получить изменения одного аккаунта в обратном порядке,
+ * поэтому изменение старее уже отправленного по тому же аккаунту отбрасывается.
+ * Последние изменения хранятся в кольцевом буфере в порядке поступления,
+ * чтобы переподключившийся клиент мог продолжить с последнего полученного события.
+ * Коммит никогда не ждет подписчиков: у каждого из них свой ограниченный буфер и своя задача отправки,
+ * поэтому медленный клиент не задерживает остальных, а переполнивший буфер подписчик отключается
+ */
+@Slf4j
+@Component
+public class AccountChangeStream {
+
+    static final String CHANGE_EVENT = "account";
+    static final String RESYNC_EVENT = "resync";
+    static final String OVERFLOW_EVENT = "overflow";
+
+    /**
+     * Отличает идентификаторы событий разных запусков приложения
+     */
+    private final String epoch;
+
+    private final long emitterTimeoutMillis;
+    private final int subscriberBufferSize;
+    private final int maxSubscribers;
+    private final ExecutorService senders;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Кольцевой буфер последних изменений в порядке поступления, защищен монитором this
+     */
+    private final Change[] history;
+    private long arrived;
+
+    /**
+     * Номер последнего изменения каждого аккаунта из кольцевого буфера, защищен монитором this
+     */
+    private final Map<String, Long> latest = new HashMap<>();
+
+    @Autowired
+    public AccountChangeStream(
+            @Value("${bank.stream.history-size:4096}") int historySize,
+            @Value("${bank.stream.subscriber-buffer-size:256}") int subscriberBufferSize,
+            @Value("${bank.stream.emitter-timeout-millis:1800000}") long emitterTimeoutMillis,
+            @Value("${bank.stream.max-subscribers:256}") int maxSubscribers) {
+        this(Long.toString(System.currentTimeMillis(), Character.MAX_RADIX),
+                historySize, subscriberBufferSize, emitterTimeoutMillis, maxSubscribers);
+    }
+
+    AccountChangeStream(String epoch, int historySize, int subscriberBufferSize, long emitterTimeoutMillis,
+                        int maxSubscribers) {
+        this.epoch = epoch;
+        this.history = new Change[historySize];
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.maxSubscribers = maxSubscribers;
+        this.senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "account-stream-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Метод для подписки на изменения аккаунтов
+     * @param names - имена аккаунтов для фильтрации, null или пустой набор - все аккаунты
+     * @param lastEventId - идентификатор последнего полученного клиентом события, null - только новые изменения
+     * @return SseEmitter, в который будут отправляться изменения
+     * @throws TooManyRequestsException если подписчиков уже maxSubscribers
+     */
+    public SseEmitter subscribe(Collection<String> names, String lastEventId) {
+        return subscribe(new SseEmitter(emitterTimeoutMillis), names, lastEventId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, Collection<String> names, String lastEventId) {
+        Set<String> filter = names == null || names.isEmpty() ? null : Set.copyOf(names);
+        Subscriber subscriber;
+        synchronized (this) {
+            if (subscribers.size() >= maxSubscribers) {
+                throw new TooManyRequestsException("Too many stream subscribers, retry later");
+            }
+            List<Change> backlog = lastEventId == null ? List.of() : backlog(lastEventId);
+            subscriber = new Subscriber(emitter, filter, subscriberBufferSize + backlog.size());
+            backlog.forEach(subscriber::offer);
+            subscribers.add(subscriber);
+        }
+        subscriber.start();
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(ex -> subscriber.close());
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        AccountDTO dto = AccountDTO.builder()
+                .name(event.getName())
+                .balance(event.getBalance())
+                .build();
+        synchronized (this) {
+            Long newer = latest.get(event.getName());
+            if (newer != null && newer > event.getSequence()) {
+                log.debug("AccountChangeStream{} onAccountChanged(): change " + event.getSequence()
+                        + " of " + event.getName() + " is older than " + newer + ", skipped");
+                return;
+            }
+            Change change = new Change(event.getSequence(), dto);
+            int slot = (int) (arrived++ % history.length);
+            Change evicted = history[slot];
+            if (evicted != null && evicted.account != null) {
+                latest.remove(evicted.account.getName(), evicted.sequence);
+            }
+            history[slot] = change;
+            latest.put(event.getName(), event.getSequence());
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(change);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    /**
+     * Собирает изменения из кольцевого буфера, поступившие после события lastEventId.
+     * Если такого изменения в буфере уже нет или идентификатор относится к другому запуску,
+     * клиент получает только событие resync - ему нужно перечитать /api/accounts
+     */
+    private List<Change> backlog(String lastEventId) {
+        long since = sequenceOf(lastEventId);
+        long oldest = Math.max(0, arrived - history.length);
+        for (long index = arrived - 1; since > 0 && index >= oldest; index--) {
+            if (history[(int) (index % history.length)].sequence == since) {
+                List<Change> backlog = new ArrayList<>();
+                for (long next = index + 1; next < arrived; next++) {
+                    backlog.add(history[(int) (next % history.length)]);
+                }
+                return backlog;
+            }
+        }
+        long newest = arrived == 0 ? 0 : history[(int) ((arrived - 1) % history.length)].sequence;
+        return List.of(new Change(newest, null));
+    }
+
+    /**
+     * @return номер изменения из идентификатора события этого запуска или -1 для чужого идентификатора
+     */
+    private long sequenceOf(String eventId) {
+        String prefix = epoch + ".";
+        if (!eventId.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "." + sequence;
+    }
+
+    private static class Change {
+
+        private final long sequence;
+
+        /**
+         * null означает событие resync
+         */
+        private final AccountDTO account;
+
+        private Change(long sequence, AccountDTO account) {
+            this.sequence = sequence;
+            this.account = account;
+        }
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Set<String> names;
+        private final BlockingQueue<Change> buffer;
+        private volatile boolean overflowed;
+        private volatile Future<?> sender;
+
+        private Subscriber(SseEmitter emitter, Set<String> names, int bufferSize) {
+            this.emitter = emitter;
+            this.names = names;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * Вызывается под монитором потока, поэтому не должен блокироваться
+         */
+        private void offer(Change change) {
+            if (overflowed) {
+                return;
+            }
+            if (change.account != null && names != null && !names.contains(change.account.getName())) {
+                return;
+            }
+            if (!buffer.offer(change)) {
+                overflowed = true;
+                subscribers.remove(this);
+            }
+        }
+
+        private void start() {
+            sender = senders.submit(this::drain);
+        }
+
+        private void close() {
+            subscribers.remove(this);
+            Future<?> current = sender;
+            if (current != null) {
+                current.cancel(true);
+            }
+        }
+
+        /**
+         * Задача отправки живет, пока подписчик подключен. Блокирующая запись в медленное
+         * соединение задерживает только ее, а буфер переполняется, и подписчик отключается
+         */
+        private void drain() {
+            try {
+                while (true) {
+                    Change change = buffer.poll();
+                    if (change == null) {
+                        if (overflowed) {
+                            emitter.send(SseEmitter.event()
+                                    .name(OVERFLOW_EVENT)
+                                    .data("Subscriber is too slow, reconnect with Last-Event-ID"));
+                            emitter.complete();
+                            return;
+                        }
+                        change = buffer.take();
+                    }
+                    send(change);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException ex) {
+                log.debug("AccountChangeStream{} drain(): subscriber disconnected", ex);
+                subscribers.remove(this);
+                emitter.completeWithError(ex);
+            }
+        }
+
+        private void send(Change change) throws IOException {
+            if (change.account == null) {
+                emitter.send(SseEmitter.event()
+                        .id(eventId(change.sequence))
+                        .name(RESYNC_EVENT)
+                        .data("History is not available, reload /api/accounts"));
+            } else {
+                emitter.send(SseEmitter.event()
+                        .id(eventId(change.sequence))
+                        .name(CHANGE_EVENT)
+                        .data(change.account));
+            }
+        }
+    }
+}
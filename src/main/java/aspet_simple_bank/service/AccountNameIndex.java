@@ -0,0 +1,337 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.ColdAccountStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Индекс имен аккаунтов для поиска по префиксу, в том числе с опечатками.
+ * Имена хранятся в отсортированных массивах: большой базовый и маленький для новых имен,
+ * который сливается в базовый, когда вырастает до mergeThreshold. Отсортированный массив -
+ * это неявное префиксное дерево: все имена с общим префиксом занимают непрерывный диапазон,
+ * а дочерние узлы находятся бинарным поиском по следующему символу. Поэтому поиск
+ * по префиксу - это два бинарных поиска, а нечеткий поиск обходит дерево, считая строку
+ * матрицы Левенштейна на каждом уровне и отсекая ветки, где расстояние уже больше допустимого.
+ * Поиск не различает регистр: элемент индекса - имя в нижнем регистре, разделитель SEPARATOR
+ * и исходное имя, которое и возвращается. Разделитель меньше любого символа, поэтому элементы
+ * упорядочены по нормализованному имени, а обход дерева на нем останавливается.
+ * Массивы не изменяются после публикации, поиск читает их без блокировок
+ */
+@Slf4j
+@Component
+public class AccountNameIndex {
+
+    public static final int MAX_FUZZY = 2;
+
+    private static final String[] EMPTY = new String[0];
+
+    private static final char SEPARATOR = '\u0000';
+
+    private final AccountRepository accountRepository;
+    private final ColdAccountStore coldAccountStore;
+    private final int mergeThreshold;
+
+    private volatile Snapshot snapshot = new Snapshot(EMPTY, EMPTY);
+
+    public AccountNameIndex(
+            AccountRepository accountRepository,
+            ColdAccountStore coldAccountStore,
+            @Value("${bank.search.merge-threshold:1024}") int mergeThreshold) {
+        this.accountRepository = accountRepository;
+        this.coldAccountStore = coldAccountStore;
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    /**
+     * Загружает имена, которые уже есть в леджере и холодном хранилище
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<String> names = new ArrayList<>(accountRepository.findAllNames());
+        names.addAll(coldAccountStore.coldNames());
+        addAll(names);
+        log.info("AccountNameIndex{} load(): " + size() + " account names indexed.");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        if (event.getType() == AccountChangedEvent.ChangeType.CREATED) {
+            add(event.getName());
+        }
+    }
+
+    public synchronized void add(String name) {
+        String added = entry(name);
+        Snapshot current = snapshot;
+        if (Arrays.binarySearch(current.base, added) >= 0) {
+            return;
+        }
+        int position = Arrays.binarySearch(current.recent, added);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        String[] recent = new String[current.recent.length + 1];
+        System.arraycopy(current.recent, 0, recent, 0, position);
+        recent[position] = added;
+        System.arraycopy(current.recent, position, recent, position + 1, current.recent.length - position);
+        snapshot = recent.length >= mergeThreshold
+                ? new Snapshot(merge(current.base, recent), EMPTY)
+                : new Snapshot(current.base, recent);
+    }
+
+    public synchronized void addAll(Collection<String> names) {
+        String[] added = names.stream().map(AccountNameIndex::entry).distinct().sorted().toArray(String[]::new);
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(merge(merge(current.base, current.recent), added), EMPTY);
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        return current.base.length + current.recent.length;
+    }
+
+    /**
+     * @param prefix - начало имени, без учета регистра
+     * @param fuzzy - допустимое число опечаток в префиксе, от 0 до MAX_FUZZY
+     * @param offset - сколько имен пропустить
+     * @param limit - сколько имен вернуть
+     * @return исходные имена, упорядоченные по числу опечаток, затем по алфавиту без учета регистра
+     */
+    public List<String> search(String prefix, int fuzzy, int offset, int limit) {
+        String key = normalize(prefix);
+        Snapshot current = snapshot;
+        List<String> result = new ArrayList<>(Math.min(limit, 1024));
+        int skip = offset;
+        List<int[]> previousBase = List.of();
+        List<int[]> previousRecent = List.of();
+        for (int edits = 0; edits <= fuzzy && result.size() < limit; edits++) {
+            List<int[]> base = matchingRanges(current.base, key, edits);
+            List<int[]> recent = matchingRanges(current.recent, key, edits);
+            Cursor fromBase = new Cursor(current.base, base, previousBase);
+            Cursor fromRecent = new Cursor(current.recent, recent, previousRecent);
+            String nextBase = fromBase.next();
+            String nextRecent = fromRecent.next();
+            while ((nextBase != null || nextRecent != null) && result.size() < limit) {
+                String name;
+                if (nextRecent == null || nextBase != null && nextBase.compareTo(nextRecent) < 0) {
+                    name = nextBase;
+                    nextBase = fromBase.next();
+                } else {
+                    name = nextRecent;
+                    nextRecent = fromRecent.next();
+                }
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    result.add(name.substring(name.indexOf(SEPARATOR) + 1));
+                }
+            }
+            previousBase = base;
+            previousRecent = recent;
+        }
+        return result;
+    }
+
+    /**
+     * Элемент индекса для имени аккаунта
+     */
+    static String entry(String name) {
+        return normalize(name) + SEPARATOR + name;
+    }
+
+    private static String normalize(String text) {
+        return text.replace(String.valueOf(SEPARATOR), "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Диапазоны массива, в которых префикс имени отличается от заданного не более чем на edits правок.
+     * Диапазоны не пересекаются и упорядочены
+     */
+    static List<int[]> matchingRanges(String[] names, String prefix, int edits) {
+        List<int[]> ranges = new ArrayList<>();
+        if (names.length == 0) {
+            return ranges;
+        }
+        if (edits == 0) {
+            int from = lowerBound(names, 0, names.length, prefix);
+            int to = upperBoundOfPrefix(names, from, names.length, prefix);
+            if (from < to) {
+                ranges.add(new int[] {from, to});
+            }
+            return ranges;
+        }
+        int[] row = new int[prefix.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        walk(names, 0, names.length, 0, prefix, row, edits, ranges);
+        return ranges;
+    }
+
+    /**
+     * Обход неявного префиксного дерева: узел - диапазон [from, to) с общим префиксом длины depth.
+     * Нормализованные имена длины depth идут в начале диапазона, у них на позиции depth - SEPARATOR
+     */
+    private static void walk(String[] names, int from, int to, int depth, String prefix, int[] row, int edits,
+                             List<int[]> ranges) {
+        if (row[prefix.length()] <= edits) {
+            ranges.add(new int[] {from, to});
+            return;
+        }
+        int child = from;
+        while (child < to && names[child].charAt(depth) == SEPARATOR) {
+            child++;
+        }
+        while (child < to) {
+            char c = names[child].charAt(depth);
+            int end = endOfChar(names, child, to, depth, c);
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int i = 1; i < row.length; i++) {
+                int substitution = row[i - 1] + (prefix.charAt(i - 1) == c ? 0 : 1);
+                next[i] = Math.min(substitution, Math.min(row[i] + 1, next[i - 1] + 1));
+                min = Math.min(min, next[i]);
+            }
+            if (min <= edits) {
+                walk(names, child, end, depth + 1, prefix, next, edits, ranges);
+            }
+            child = end;
+        }
+    }
+
+    /**
+     * Первая позиция в [from, to), где символ на позиции depth больше c
+     */
+    private static int endOfChar(String[] names, int from, int to, int depth, char c) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].charAt(depth) <= c) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(String[] names, int from, int to, String key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBoundOfPrefix(String[] names, int from, int to, String prefix) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (names[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String[] merge(String[] left, String[] right) {
+        if (right.length == 0) {
+            return left;
+        }
+        String[] merged = new String[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length || j < right.length) {
+            String next;
+            if (j == right.length || i < left.length && left[i].compareTo(right[j]) <= 0) {
+                next = left[i++];
+            } else {
+                next = right[j++];
+            }
+            if (k == 0 || !merged[k - 1].equals(next)) {
+                merged[k++] = next;
+            }
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    /**
+     * Имена из диапазонов текущего уровня, которые не попали в диапазоны предыдущего
+     */
+    private static class Cursor {
+
+        private final String[] names;
+        private final List<int[]> ranges;
+        private final List<int[]> excluded;
+        private int range;
+        private int excludedRange;
+
+        /**
+         * Следующая позиция, с которой продолжается перебор
+         */
+        private int position;
+
+        private Cursor(String[] names, List<int[]> ranges, List<int[]> excluded) {
+            this.names = names;
+            this.ranges = ranges;
+            this.excluded = excluded;
+        }
+
+        private String next() {
+            while (range < ranges.size()) {
+                int[] current = ranges.get(range);
+                int candidate = Math.max(position, current[0]);
+                if (candidate >= current[1]) {
+                    range++;
+                    continue;
+                }
+                while (excludedRange < excluded.size() && excluded.get(excludedRange)[1] <= candidate) {
+                    excludedRange++;
+                }
+                if (excludedRange < excluded.size() && excluded.get(excludedRange)[0] <= candidate) {
+                    position = excluded.get(excludedRange)[1];
+                    continue;
+                }
+                position = candidate + 1;
+                return names[candidate];
+            }
+            return null;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final String[] base;
+        private final String[] recent;
+
+        private Snapshot(String[] base, String[] recent) {
+            this.base = base;
+            this.recent = recent;
+        }
+    }
+}
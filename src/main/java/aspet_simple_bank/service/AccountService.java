@@ -16,5 +16,7 @@ public interface AccountService {
 
     List<AccountDTO> getAccounts();
 
+    AccountDTO getAccount(String name);
+
     Optional<Account> createAccount(String name, String pinCode);
 }
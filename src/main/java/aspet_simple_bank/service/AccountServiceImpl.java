@@ -1,102 +1,224 @@
 package aspet_simple_bank.service;
 
 import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.NotFoundException;
 import aspet_simple_bank.model.client.domain_model.Account;
 import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
 import aspet_simple_bank.model.client.factory.AccountDTOFactory;
 import aspet_simple_bank.store.AccountRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class AccountServiceImpl implements AccountService {
 
     private final AccountRepository accountRepository;
     private final AccountDTOFactory accountDTOFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LedgerVersion ledgerVersion;
+    private final VelocityGuard velocityGuard;
+    private final PinCodeVerifier pinCodeVerifier;
+    private final ChangeSequence changeSequence;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
+    public AccountServiceImpl(
+            AccountRepository accountRepository,
+            AccountDTOFactory accountDTOFactory,
+            ApplicationEventPublisher eventPublisher,
+            LedgerVersion ledgerVersion,
+            VelocityGuard velocityGuard,
+            PinCodeVerifier pinCodeVerifier,
+            ChangeSequence changeSequence,
+            PlatformTransactionManager transactionManager) {
+        this.accountRepository = accountRepository;
+        this.accountDTOFactory = accountDTOFactory;
+        this.eventPublisher = eventPublisher;
+        this.ledgerVersion = ledgerVersion;
+        this.velocityGuard = velocityGuard;
+        this.pinCodeVerifier = pinCodeVerifier;
+        this.changeSequence = changeSequence;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Последний построенный список аккаунтов и версия леджера, под которой он читался
+     */
+    private volatile AccountsSnapshot accountsSnapshot;
+
+    /**
+     * Список перестраивается только после изменения версии леджера.
+     * Версия читается до обращения к репозиторию, поэтому кэш никогда не бывает старее своей версии
+     */
+    @Transactional(readOnly = true)
     @Override
     public List<AccountDTO> getAccounts() {
-        return accountRepository.findAll().stream()
+        long version = ledgerVersion.current();
+        AccountsSnapshot snapshot = accountsSnapshot;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.accounts;
+        }
+        List<AccountDTO> accounts = Collections.unmodifiableList(accountRepository.findAll().stream()
                 .map(accountDTOFactory::createAccountDTO)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+        accountsSnapshot = new AccountsSnapshot(version, accounts);
+        return accounts;
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
+    @Override
+    public AccountDTO getAccount(String name) {
+        return accountRepository.findAccountByName(name)
+                .map(accountDTOFactory::createAccountDTO)
+                .orElseThrow(() -> new NotFoundException("Account " + name + " not found"));
+    }
+
+    /**
+     * Пинкод проверяется до блокировок, поэтому медленный хэш не держит строки аккаунтов.
+     * Затем оба аккаунта блокируются до конца транзакции в порядке имен, поэтому встречные переводы
+     * не теряют изменения друг друга и не блокируют друг друга навсегда
+     */
     @Override
     public AccountDTO transfer(String accountFrom, String accountTo, String incomePinCode, double sumToTransfer) {
-        Optional<Account> nonNullAccountFrom = accountRepository.findAccountByName(accountFrom);
-        Optional<Account> nonNullAccountTo = accountRepository.findAccountByName(accountTo);
-        if(nonNullAccountFrom.isPresent()
-                && nonNullAccountTo.isPresent()
-                && nonNullAccountFrom.get().getPinCode().equals(incomePinCode)
-                && nonNullAccountFrom.get().getBalance() >= sumToTransfer) {
+        if(!pinCodeMatches(accountFrom, incomePinCode)) {
+            throw rejectTransfer(accountFrom, accountTo);
+        }
+        return transactionTemplate.execute(status -> {
+            boolean fromLockedFirst = accountFrom.compareTo(accountTo) <= 0;
+            Optional<Account> lockedFirst = accountRepository.findAccountByNameForUpdate(
+                    fromLockedFirst ? accountFrom : accountTo);
+            Optional<Account> lockedSecond = accountRepository.findAccountByNameForUpdate(
+                    fromLockedFirst ? accountTo : accountFrom);
+            Optional<Account> nonNullAccountFrom = fromLockedFirst ? lockedFirst : lockedSecond;
+            Optional<Account> nonNullAccountTo = fromLockedFirst ? lockedSecond : lockedFirst;
+            if(nonNullAccountFrom.isEmpty()
+                    || nonNullAccountTo.isEmpty()
+                    || nonNullAccountFrom.get().getBalance() < sumToTransfer) {
+                throw rejectTransfer(accountFrom, accountTo);
+            }
+            velocityGuard.checkAndRecord(accountFrom, sumToTransfer);
             nonNullAccountFrom.get().setBalance(nonNullAccountFrom.get().getBalance() - sumToTransfer);
             nonNullAccountTo.get().setBalance(nonNullAccountTo.get().getBalance() + sumToTransfer);
             accountRepository.save(nonNullAccountFrom.get());
             accountRepository.save(nonNullAccountTo.get());
-        } else {
-            log.error("AccountServiceImpl{} transfer(): "
-                    + accountFrom + " tried to transfer on account: " + accountTo
-                    + "with pin code: " + incomePinCode + ".");
-            throw new BadRequestException(
-                    "Check accounts names or pin code "
-                    + "or sum of transfer is higher then balance on account " + accountFrom + " is");
-        }
-        var dto = accountDTOFactory.createAccountDTO(nonNullAccountFrom.get());
-        return dto;
+            publishChange(nonNullAccountFrom.get(), -sumToTransfer, AccountChangedEvent.ChangeType.TRANSFER_OUT);
+            publishChange(nonNullAccountTo.get(), sumToTransfer, AccountChangedEvent.ChangeType.TRANSFER_IN);
+            return accountDTOFactory.createAccountDTO(nonNullAccountFrom.get());
+        });
     }
 
-    @Transactional
     @Override
     public AccountDTO makeDeposit(String name, String incomePinCode, double deposit) {
-        Optional<Account> account = accountRepository.findAccountByName(name);
-        if(account.isPresent() && account.get().getPinCode().equals(incomePinCode)) {
-            account.get().setBalance(account.get().getBalance() + deposit);
-            accountRepository.save(account.get());
-        } else {
-            log.error("AccountServiceImpl{} deposit(): "
-                    + "User tried to deposit on name: " + name + "with pin code: " + incomePinCode);
-            throw new BadRequestException("Name is invalid or pin code is invalid");
+        if(!pinCodeMatches(name, incomePinCode)) {
+            throw rejectDeposit(name);
         }
-        return accountDTOFactory.createAccountDTO(account.get());
+        return transactionTemplate.execute(status -> {
+            Account account = accountRepository.findAccountByNameForUpdate(name)
+                    .orElseThrow(() -> rejectDeposit(name));
+            account.setBalance(account.getBalance() + deposit);
+            accountRepository.save(account);
+            publishChange(account, deposit, AccountChangedEvent.ChangeType.DEPOSIT);
+            return accountDTOFactory.createAccountDTO(account);
+        });
     }
 
-    @Transactional
     @Override
     public AccountDTO withDrawDeposit(String name, String incomePinCode, double withDraw) {
-        Optional<Account> account = accountRepository.findAccountByName(name);
-        if(account.isPresent()
-                && account.get().getPinCode().equals(incomePinCode)
-                && account.get().getBalance() >= withDraw) {
+        if(!pinCodeMatches(name, incomePinCode)) {
+            throw rejectWithDraw(name, withDraw);
+        }
+        return transactionTemplate.execute(status -> {
+            Optional<Account> account = accountRepository.findAccountByNameForUpdate(name);
+            if(account.isEmpty() || account.get().getBalance() < withDraw) {
+                throw rejectWithDraw(name, withDraw);
+            }
+            velocityGuard.checkAndRecord(name, withDraw);
             account.get().setBalance(account.get().getBalance() - withDraw);
             accountRepository.save(account.get());
-        } else {
-            log.error("AccountServiceImpl{} withDraw(): "
-                    + "User tried to deposit on name: " + name + "with pin code: " + incomePinCode + "."
-                    + "Balance is: " + account.get().getBalance() + "."
-                    + "Withdrow is: " + withDraw + ".");
-            throw new BadRequestException(
-                    "Name is invalid or pin code is invalid or sum of withdraw is higher then balance is");
-        }
-        return accountDTOFactory.createAccountDTO(account.get());
+            publishChange(account.get(), -withDraw, AccountChangedEvent.ChangeType.WITHDRAW);
+            return accountDTOFactory.createAccountDTO(account.get());
+        });
     }
 
     @Transactional
     @Override
     public Optional<Account> createAccount(String name, String pinCode) {
-        return Optional.of(accountRepository.save(Account.builder()
+        Account account = accountRepository.save(Account.builder()
                 .name(name)
-                .pinCode(pinCode)
+                .pinCode(pinCodeVerifier.encode(pinCode))
                 .balance(0.0)
-                .build()));
+                .build());
+        publishChange(account, 0.0, AccountChangedEvent.ChangeType.CREATED);
+        return Optional.of(account);
+    }
+
+    /**
+     * Проверяет пинкод по хэшу, прочитанному без блокировки, вне транзакции, которая потом блокирует аккаунт.
+     * Сам аккаунт не загружается, поэтому блокирующее чтение получает его строку из базы,
+     * даже если сессия переживает транзакцию (open-in-view).
+     * Пинкод аккаунта не меняется, поэтому повторять проверку под блокировкой не нужно
+     * @param name - имя аккаунта
+     * @param pinCode - пинкод, введенный пользователем
+     * @return true, если аккаунт существует и пинкод верный
+     */
+    private boolean pinCodeMatches(String name, String pinCode) {
+        return accountRepository.findPinCodeByName(name)
+                .map(encoded -> pinCodeVerifier.matches(name, encoded, pinCode))
+                .orElse(false);
+    }
+
+    private BadRequestException rejectTransfer(String accountFrom, String accountTo) {
+        log.error("AccountServiceImpl{} transfer(): "
+                + accountFrom + " tried to transfer on account: " + accountTo + ".");
+        return new BadRequestException(
+                "Check accounts names or pin code "
+                + "or sum of transfer is higher then balance on account " + accountFrom + " is");
+    }
+
+    private BadRequestException rejectDeposit(String name) {
+        log.error("AccountServiceImpl{} deposit(): "
+                + "User tried to deposit on name: " + name + ".");
+        return new BadRequestException("Name is invalid or pin code is invalid");
+    }
+
+    private BadRequestException rejectWithDraw(String name, double withDraw) {
+        log.error("AccountServiceImpl{} withDraw(): "
+                + "User tried to withdraw from name: " + name + "."
+                + "Withdrow is: " + withDraw + ".");
+        return new BadRequestException(
+                "Name is invalid or pin code is invalid or sum of withdraw is higher then balance is");
+    }
+
+    /**
+     * Публикует изменение аккаунта, слушатели получат его после коммита транзакции.
+     * Вызывается, пока строка аккаунта заблокирована, чтобы номер изменения отражал порядок коммитов
+     * @param account - измененный аккаунт
+     * @param delta - сумма изменения баланса
+     * @param type - тип операции
+     */
+    private void publishChange(Account account, double delta, AccountChangedEvent.ChangeType type) {
+        eventPublisher.publishEvent(new AccountChangedEvent(account.getName(), account.getBalance(), delta, type,
+                changeSequence.next()));
+    }
+
+    private static class AccountsSnapshot {
+
+        private final long version;
+        private final List<AccountDTO> accounts;
+
+        private AccountsSnapshot(long version, List<AccountDTO> accounts) {
+            this.version = version;
+            this.accounts = accounts;
+        }
     }
 }
@@ -0,0 +1,125 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.dto.TieringReportDTO;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.ColdAccountStore;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Вытеснение аккаунтов, в которые давно не было записей, из леджера в холодное хранилище.
+ * Каждый сегмент переносится своей транзакцией: строки блокируются, записываются в файл
+ * и удаляются, а сегмент становится виден только после коммита. Обратно в леджер аккаунт
+ * возвращает AccountRepository.findAccountByName при первом обращении
+ */
+@Slf4j
+@Component
+public class AccountTiering {
+
+    private final AccountRepository accountRepository;
+    private final ColdAccountStore coldAccountStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration idleAfter;
+    private final int segmentSize;
+    private final int maxSegmentsPerRun;
+
+    private volatile Instant lastRunAt;
+    private volatile int lastRunEvicted;
+    private volatile long lastRunMillis;
+
+    public AccountTiering(
+            AccountRepository accountRepository,
+            ColdAccountStore coldAccountStore,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            @Value("${bank.tiering.idle-after-millis:7776000000}") long idleAfterMillis,
+            @Value("${bank.tiering.segment-size:1000}") int segmentSize,
+            @Value("${bank.tiering.max-segments-per-run:100}") int maxSegmentsPerRun) {
+        this.accountRepository = accountRepository;
+        this.coldAccountStore = coldAccountStore;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idleAfter = Duration.ofMillis(idleAfterMillis);
+        this.segmentSize = segmentSize;
+        this.maxSegmentsPerRun = maxSegmentsPerRun;
+    }
+
+    @Scheduled(initialDelayString = "${bank.tiering.interval-millis:3600000}",
+            fixedDelayString = "${bank.tiering.interval-millis:3600000}")
+    public void evictIdleAccounts() {
+        evictIdleAccounts(Instant.now().minus(idleAfter));
+    }
+
+    /**
+     * @param cutoff - вытесняются аккаунты без записей после этого момента
+     * @return количество вытесненных аккаунтов
+     */
+    public int evictIdleAccounts(Instant cutoff) {
+        long started = System.nanoTime();
+        int evicted = 0;
+        for (int i = 0; i < maxSegmentsPerRun; i++) {
+            Integer moved = transactionTemplate.execute(status -> evictSegment(cutoff));
+            if (moved == null || moved == 0) {
+                break;
+            }
+            evicted += moved;
+            if (moved < segmentSize) {
+                break;
+            }
+        }
+        lastRunAt = Instant.now();
+        lastRunEvicted = evicted;
+        lastRunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (evicted > 0) {
+            log.info("AccountTiering{} evictIdleAccounts(): " + evicted + " accounts moved to cold storage in "
+                    + lastRunMillis + " ms.");
+        }
+        return evicted;
+    }
+
+    public TieringReportDTO getReport() {
+        Timer faultIns = coldAccountStore.faultInTimer();
+        return TieringReportDTO.builder()
+                .hotAccounts(accountRepository.count())
+                .coldAccounts(coldAccountStore.coldAccounts())
+                .coldSegments(coldAccountStore.coldSegments())
+                .coldBytes(coldAccountStore.coldBytes())
+                .reclaimedBytes(coldAccountStore.reclaimedBytes())
+                .faultIns(faultIns.count())
+                .faultInMeanMillis(faultIns.mean(TimeUnit.MILLISECONDS))
+                .faultInMaxMillis(faultIns.max(TimeUnit.MILLISECONDS))
+                .lastRunAt(lastRunAt)
+                .lastRunEvicted(lastRunEvicted)
+                .lastRunMillis(lastRunMillis)
+                .build();
+    }
+
+    private int evictSegment(Instant cutoff) {
+        List<Account> idle = accountRepository.findByLastActivityBeforeOrderByIdAsc(cutoff, PageRequest.of(0, segmentSize));
+        if (idle.isEmpty()) {
+            return 0;
+        }
+        ColdAccountStore.Segment segment = coldAccountStore.write(idle);
+        accountRepository.deleteAllByIdInBatch(idle.stream().map(Account::getId).collect(Collectors.toList()));
+        coldAccountStore.publishOnCommit(segment);
+        eventPublisher.publishEvent(new AccountsEvictedEvent(
+                idle.stream().map(Account::getName).collect(Collectors.toList())));
+        return idle.size();
+    }
+}
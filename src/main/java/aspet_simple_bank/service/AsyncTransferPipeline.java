@@ -0,0 +1,418 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.dto.TransferTicketDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронные переводы через заранее выделенный кольцевой буфер с одним писателем.
+ * Принимающие потоки проверяют пинкод, занимают ячейку буфера CAS-ом и сразу возвращают идентификатор заявки.
+ * Единственный поток-писатель последовательно применяет заявки без блокировок в памяти
+ * и сохраняет их пачками, по одной транзакции на пачку. Если пачка не сохранилась,
+ * ее заявки повторяются по одной, чтобы ошибка одной заявки не отменяла остальные.
+ * Статусы хранятся по номеру ячейки в последовательности буфера в отдельном кольце большего размера.
+ * Клиент получает не сам номер, а случайный идентификатор заявки: номер, скрытый ключом
+ * экземпляра, и случайная часть, без которой статус не выдается.
+ * При заполненном буфере заявка сразу отклоняется, чтобы очередь не росла без границ
+ */
+@Slf4j
+@Component
+public class AsyncTransferPipeline {
+
+    private static final int STATUS_BITS = 4;
+
+    private final AccountRepository accountRepository;
+    private final PinCodeVerifier pinCodeVerifier;
+    private final VelocityGuard velocityGuard;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeSequence changeSequence;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter overloadRejections;
+
+    private final int batchSize;
+    private final long idleParkNanos;
+
+    private final TransferSlot[] slots;
+    private final int slotMask;
+    private final AtomicLongArray published;
+
+    /**
+     * Последний занятый производителями номер
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Последний номер, обработанный писателем
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * Номер заявки и ее статус, упакованные в одно слово: (номер << STATUS_BITS) | статус
+     */
+    private final AtomicLongArray statuses;
+    private final int statusMask;
+
+    /**
+     * Случайная часть идентификатора каждой заявки, в той же ячейке, что и ее статус
+     */
+    private final AtomicLongArray secrets;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Ключ, которым номер заявки скрыт в идентификаторе
+     */
+    private final long sequenceKey = random.nextLong();
+
+    private final ConcurrentMap<Long, CompletableFuture<TransferTicketDTO.Status>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Результаты текущей пачки, используются только писателем
+     */
+    private final TransferTicketDTO.Status[] outcomes;
+
+    private final Thread writer;
+    private volatile boolean running;
+
+    public AsyncTransferPipeline(
+            AccountRepository accountRepository,
+            PinCodeVerifier pinCodeVerifier,
+            VelocityGuard velocityGuard,
+            ApplicationEventPublisher eventPublisher,
+            ChangeSequence changeSequence,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${bank.transfers.async.capacity:65536}") int capacity,
+            @Value("${bank.transfers.async.batch-size:256}") int batchSize,
+            @Value("${bank.transfers.async.status-capacity:1048576}") int statusCapacity,
+            @Value("${bank.transfers.async.idle-park-micros:500}") long idleParkMicros) {
+        this.accountRepository = accountRepository;
+        this.pinCodeVerifier = pinCodeVerifier;
+        this.velocityGuard = velocityGuard;
+        this.eventPublisher = eventPublisher;
+        this.changeSequence = changeSequence;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.idleParkNanos = TimeUnit.MICROSECONDS.toNanos(idleParkMicros);
+
+        int slotCount = powerOfTwo(capacity);
+        this.slots = new TransferSlot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new TransferSlot();
+        }
+        this.slotMask = slotCount - 1;
+        this.published = new AtomicLongArray(slotCount);
+
+        int statusCount = powerOfTwo(Math.max(statusCapacity, slotCount));
+        this.statuses = new AtomicLongArray(statusCount);
+        this.secrets = new AtomicLongArray(statusCount);
+        this.statusMask = statusCount - 1;
+        this.outcomes = new TransferTicketDTO.Status[batchSize];
+
+        this.overloadRejections = Counter.builder("bank.transfers.async.rejected")
+                .description("Transfers rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("bank.transfers.async.queue.depth", this, AsyncTransferPipeline::queueDepth)
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::runWriter, "async-transfer-writer");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer.start();
+    }
+
+    /**
+     * Останавливает прием заявок и дожидается, пока писатель обработает уже принятые
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Метод для постановки перевода в очередь
+     * @param nameFrom - имя аккаунта - отправителя перевода
+     * @param nameTo - имя аккаунта - получателя перевода
+     * @param pinCode - пинкод аккаунта - отправителя перевода
+     * @param amount - сумма перевода
+     * @return идентификатор заявки со статусом QUEUED
+     * @throws TooManyRequestsException если очередь заполнена
+     */
+    public TransferTicketDTO submit(String nameFrom, String nameTo, String pinCode, double amount) {
+        Optional<Account> accountFrom = accountRepository.findAccountByName(nameFrom);
+        if (accountFrom.isEmpty() || !pinCodeVerifier.matches(accountFrom.get(), pinCode)) {
+            throw new BadRequestException("Name is invalid or pin code is invalid");
+        }
+        long sequence = running ? claim() : -1;
+        if (sequence < 0) {
+            overloadRejections.increment();
+            throw new TooManyRequestsException("Transfer queue is full, retry later");
+        }
+        TransferSlot slot = slots[(int) (sequence & slotMask)];
+        slot.nameFrom = nameFrom;
+        slot.nameTo = nameTo;
+        slot.amount = amount;
+        long secret = random.nextLong();
+        secrets.set((int) (sequence & statusMask), secret);
+        statuses.set((int) (sequence & statusMask), pack(sequence, TransferTicketDTO.Status.QUEUED));
+        published.set((int) (sequence & slotMask), sequence);
+        return new TransferTicketDTO(new UUID(sequence ^ sequenceKey, secret).toString(), TransferTicketDTO.Status.QUEUED);
+    }
+
+    /**
+     * @param ticket - идентификатор заявки
+     * @return текущий статус заявки, UNKNOWN для идентификатора, который не выдавался
+     */
+    public TransferTicketDTO getStatus(String ticket) {
+        return new TransferTicketDTO(ticket, status(ticket));
+    }
+
+    /**
+     * @param ticket - идентификатор заявки
+     * @return future, который завершится, когда заявка получит окончательный статус
+     */
+    public CompletableFuture<TransferTicketDTO> awaitStatus(String ticket) {
+        TransferTicketDTO.Status current = status(ticket);
+        if (current.isFinal()) {
+            return CompletableFuture.completedFuture(new TransferTicketDTO(ticket, current));
+        }
+        long sequence = sequenceOf(ticket);
+        CompletableFuture<TransferTicketDTO.Status> future = waiters.computeIfAbsent(sequence, key -> new CompletableFuture<>());
+        current = status(ticket);
+        if (current.isFinal() && waiters.remove(sequence, future)) {
+            future.complete(current);
+        }
+        return future.thenApply(status -> new TransferTicketDTO(ticket, status));
+    }
+
+    public long queueDepth() {
+        return claimed.get() - consumed.get();
+    }
+
+    private TransferTicketDTO.Status status(String ticket) {
+        UUID id;
+        try {
+            id = UUID.fromString(ticket);
+        } catch (IllegalArgumentException e) {
+            return TransferTicketDTO.Status.UNKNOWN;
+        }
+        long sequence = id.getMostSignificantBits() ^ sequenceKey;
+        if (sequence <= 0 || sequence > claimed.get()) {
+            return TransferTicketDTO.Status.UNKNOWN;
+        }
+        int index = (int) (sequence & statusMask);
+        long packed = statuses.get(index);
+        long storedSequence = packed >>> STATUS_BITS;
+        if (storedSequence > sequence) {
+            return TransferTicketDTO.Status.EXPIRED;
+        }
+        // номер меньше - производитель еще не вернул идентификатор, значит его никто не мог получить
+        if (storedSequence < sequence || secrets.get(index) != id.getLeastSignificantBits()) {
+            return TransferTicketDTO.Status.UNKNOWN;
+        }
+        return TransferTicketDTO.Status.values()[(int) (packed & ((1 << STATUS_BITS) - 1))];
+    }
+
+    /**
+     * Вызывается только для идентификатора, уже прошедшего проверку в status
+     */
+    private long sequenceOf(String ticket) {
+        return UUID.fromString(ticket).getMostSignificantBits() ^ sequenceKey;
+    }
+
+    private long claim() {
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - consumed.get() > slots.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private void runWriter() {
+        while (running || consumed.get() < claimed.get()) {
+            long first = consumed.get() + 1;
+            int count = 0;
+            while (count < batchSize && published.get((int) ((first + count) & slotMask)) == first + count) {
+                count++;
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(idleParkNanos);
+                continue;
+            }
+            try {
+                applyBatch(first, count);
+            } catch (Throwable e) {
+                log.error("AsyncTransferPipeline{} runWriter(): batch of " + count
+                        + " transfers starting at " + first + " failed, marking it FAILED.", e);
+                failBatch(first, count);
+            }
+        }
+    }
+
+    private void applyBatch(long first, int count) {
+        try {
+            applyInTransaction(first, 0, count);
+        } catch (RuntimeException e) {
+            log.error("AsyncTransferPipeline{} applyBatch(): batch of " + count
+                    + " transfers starting at " + first + " failed, retrying one by one.", e);
+            for (int i = 0; i < count; i++) {
+                try {
+                    applyInTransaction(first + i, i, 1);
+                } catch (Throwable single) {
+                    log.error("AsyncTransferPipeline{} applyBatch(): transfer " + (first + i) + " failed.", single);
+                    outcomes[i] = TransferTicketDTO.Status.FAILED;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            publish(first + i, outcomes[i]);
+        }
+        consumed.set(first + count - 1);
+    }
+
+    /**
+     * Писатель не должен останавливаться из-за одной пачки: иначе все заявки останутся QUEUED,
+     * а буфер заполнится. Заявки пачки, которые еще не получили статус, помечаются FAILED,
+     * и пачка считается обработанной
+     */
+    private void failBatch(long first, int count) {
+        for (int i = 0; i < count; i++) {
+            long sequence = first + i;
+            if (statuses.get((int) (sequence & statusMask)) == pack(sequence, TransferTicketDTO.Status.QUEUED)) {
+                publish(sequence, TransferTicketDTO.Status.FAILED);
+            }
+        }
+        consumed.set(first + count - 1);
+    }
+
+    private void publish(long sequence, TransferTicketDTO.Status outcome) {
+        slots[(int) (sequence & slotMask)].clear();
+        statuses.set((int) (sequence & statusMask), pack(sequence, outcome));
+        CompletableFuture<TransferTicketDTO.Status> waiter = waiters.remove(sequence);
+        if (waiter != null) {
+            waiter.complete(outcome);
+        }
+    }
+
+    /**
+     * Применяет count заявок начиная с first в одной транзакции, результаты пишет в outcomes с позиции offset.
+     * Лимиты частоты учитываются только после коммита, при откате их резерв снимается
+     */
+    private void applyInTransaction(long first, int offset, int count) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, Account> accounts = lockAccounts(first, count);
+            for (int i = 0; i < count; i++) {
+                outcomes[offset + i] = apply(slots[(int) ((first + i) & slotMask)], accounts);
+            }
+            accountRepository.saveAll(accounts.values());
+        });
+    }
+
+    private TransferTicketDTO.Status apply(TransferSlot slot, Map<String, Account> accounts) {
+        Account accountFrom = accounts.get(slot.nameFrom);
+        Account accountTo = accounts.get(slot.nameTo);
+        if (accountFrom == null || accountTo == null) {
+            return TransferTicketDTO.Status.REJECTED_UNKNOWN_ACCOUNT;
+        }
+        if (accountFrom.getBalance() < slot.amount) {
+            return TransferTicketDTO.Status.REJECTED_INSUFFICIENT_FUNDS;
+        }
+        try {
+            velocityGuard.checkAndRecord(accountFrom.getName(), slot.amount);
+        } catch (TooManyRequestsException e) {
+            return TransferTicketDTO.Status.REJECTED_VELOCITY_LIMIT;
+        }
+        accountFrom.setBalance(accountFrom.getBalance() - slot.amount);
+        accountTo.setBalance(accountTo.getBalance() + slot.amount);
+        eventPublisher.publishEvent(new AccountChangedEvent(accountFrom.getName(), accountFrom.getBalance(),
+                -slot.amount, AccountChangedEvent.ChangeType.TRANSFER_OUT, changeSequence.next()));
+        eventPublisher.publishEvent(new AccountChangedEvent(accountTo.getName(), accountTo.getBalance(),
+                slot.amount, AccountChangedEvent.ChangeType.TRANSFER_IN, changeSequence.next()));
+        return TransferTicketDTO.Status.COMPLETED;
+    }
+
+    /**
+     * Блокирует все аккаунты пакета в порядке имен, как AccountServiceImpl.transfer,
+     * чтобы конвейер и синхронные переводы не ждали друг друга по кругу
+     */
+    private Map<String, Account> lockAccounts(long first, int count) {
+        Set<String> names = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            TransferSlot slot = slots[(int) ((first + i) & slotMask)];
+            names.add(slot.nameFrom);
+            names.add(slot.nameTo);
+        }
+        Map<String, Account> accounts = new HashMap<>();
+        for (String name : names) {
+            accountRepository.findAccountByNameForUpdate(name).ifPresent(account -> accounts.put(name, account));
+        }
+        return accounts;
+    }
+
+    private static long pack(long sequence, TransferTicketDTO.Status status) {
+        return sequence << STATUS_BITS | status.ordinal();
+    }
+
+    private static int powerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Ячейка кольцевого буфера, создается один раз и переиспользуется
+     */
+    private static class TransferSlot {
+
+        private String nameFrom;
+        private String nameTo;
+        private double amount;
+
+        private void clear() {
+            nameFrom = null;
+            nameTo = null;
+            amount = 0.0;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package aspet_simple_bank.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сквозной номер изменений аккаунтов. Номер берется внутри транзакции, пока строка аккаунта
+ * заблокирована, поэтому изменения одного аккаунта нумеруются в порядке их коммитов,
+ * даже если слушатели после коммита получат их в другом порядке
+ */
+@Component
+public class ChangeSequence {
+
+    private final AtomicLong last = new AtomicLong();
+
+    public long next() {
+        return last.incrementAndGet();
+    }
+}
@@ -0,0 +1,76 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версия леджера: глобальный счетчик, который растет при каждом изменении любого аккаунта,
+ * и счетчики отдельных аккаунтов. Версии увеличиваются после коммита, поэтому данные,
+ * прочитанные под старой версией, могут быть только новее ее, но не наоборот
+ */
+@Component
+public class LedgerVersion {
+
+    /**
+     * Отличает ETag разных запусков приложения, счетчики после перезапуска начинаются с нуля
+     */
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final AtomicLong global = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> accounts = new ConcurrentHashMap<>();
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        accounts.computeIfAbsent(event.getName(), name -> new AtomicLong(global.get())).incrementAndGet();
+        global.incrementAndGet();
+    }
+
+    /**
+     * Вытесненные аккаунты больше не держат счетчиков. Счетчик аккаунта, измененного снова,
+     * начинается с глобальной версии, которая не меньше удаленного счетчика, поэтому ETag не повторяется
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountsEvicted(AccountsEvictedEvent event) {
+        event.getNames().forEach(accounts::remove);
+    }
+
+    public long current() {
+        return global.get();
+    }
+
+    /**
+     * @param name - имя аккаунта
+     * @return версия аккаунта или -1, если аккаунт не изменялся с момента запуска или с вытеснения
+     */
+    public long accountVersion(String name) {
+        AtomicLong version = accounts.get(name);
+        return version == null ? -1 : version.get();
+    }
+
+    /**
+     * @return ETag списка аккаунтов для текущей версии леджера
+     */
+    public String etag() {
+        return toEtag(current());
+    }
+
+    /**
+     * @param name - имя аккаунта
+     * @return ETag аккаунта для его текущей версии или null, если версии нет:
+     * несуществующему аккаунту ETag не выдается, и условный запрос к нему не вернет 304
+     */
+    public String accountEtag(String name) {
+        long version = accountVersion(name);
+        return version < 0 ? null : toEtag(version);
+    }
+
+    private String toEtag(long version) {
+        return "\"" + epoch + "." + version + "\"";
+    }
+}
@@ -0,0 +1,297 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.dto.AccountDriftDTO;
+import aspet_simple_bank.model.client.dto.ReconciliationReportDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая сверка сохранности денег, которая не останавливает запись.
+ * По каждому аккаунту копится ожидаемый баланс из сумм операций, прошедших через сервис,
+ * и периодически сравнивается с леджером. Леджер читается порциями по ключу, каждая порция -
+ * одним запросом в read-only транзакции, то есть из согласованного снимка MVCC.
+ * Расхождение по аккаунту подтверждается повторным чтением только если в этот момент
+ * по нему не было незавершенных транзакций, поэтому изменения "в полете" не считаются потерей.
+ * Состояние аккаунта появляется только после коммита первой операции по нему, незавершенные
+ * транзакции учитываются отдельным счетчиком, который удаляется вместе с последней из них.
+ * Состояния аккаунтов, вытесненных в холодное хранилище, удаляются.
+ * Аккаунт без состояния, например возвращенный из холодного хранилища, получает ожидаемый баланс
+ * из леджера, но только пока по нему нет незавершенных транзакций. Поэтому сверка ловит только
+ * расхождения, возникшие после начала учета аккаунта: ожидаемый баланс не выводится из всех
+ * пополнений и снятий с момента создания аккаунта.
+ * Сверка выключается свойством bank.reconciliation.enabled=false, ее стоимость для переводов
+ * показывает MoneyReconcilerBenchmarkTest
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bank.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+public class MoneyReconciler {
+
+    private static final double EPSILON = 0.005;
+
+    private final AccountRepository accountRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int chunkSize;
+    private final long chunkPauseMillis;
+    private final Timer durationTimer;
+
+    private final ConcurrentMap<String, AccountState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Количество незавершенных транзакций по аккаунту, ключ удаляется, когда оно падает до нуля
+     */
+    private final ConcurrentMap<String, Integer> pending = new ConcurrentHashMap<>();
+
+    private volatile ReconciliationReportDTO lastReport = ReconciliationReportDTO.builder()
+            .driftAccounts(List.of())
+            .build();
+
+    public MoneyReconciler(
+            AccountRepository accountRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${bank.reconciliation.chunk-size:500}") int chunkSize,
+            @Value("${bank.reconciliation.chunk-pause-millis:5}") long chunkPauseMillis) {
+        this.accountRepository = accountRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.chunkSize = chunkSize;
+        this.chunkPauseMillis = chunkPauseMillis;
+        this.durationTimer = Timer.builder("bank.reconciliation.duration").register(meterRegistry);
+        Gauge.builder("bank.reconciliation.drift", this, reconciler -> reconciler.lastReport.getDrift())
+                .register(meterRegistry);
+        Gauge.builder("bank.reconciliation.drift.accounts", this,
+                        reconciler -> reconciler.lastReport.getDriftAccounts().size())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Учитывает операцию в ожидаемом балансе аккаунта.
+     * Слушатель синхронный: аккаунт помечается как изменяемый еще до коммита,
+     * а сумма применяется в afterCompletion, только если транзакция зафиксирована.
+     * Пометка снимается после применения суммы, поэтому сверка не увидит аккаунт
+     * без пометки с уже зафиксированной, но еще не учтенной операцией
+     */
+    @EventListener
+    public void onAccountChanged(AccountChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commit(event);
+            return;
+        }
+        pending.merge(event.getName(), 1, Integer::sum);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        commit(event);
+                    } else if (status == STATUS_UNKNOWN) {
+                        AccountState state = states.get(event.getName());
+                        if (state != null) {
+                            synchronized (state) {
+                                state.unknown = true;
+                                state.version++;
+                            }
+                        }
+                    }
+                } finally {
+                    pending.computeIfPresent(event.getName(), (name, count) -> count == 1 ? null : count - 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Аккаунты перенесены в холодное хранилище, сверка их больше не видит
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountsEvicted(AccountsEvictedEvent event) {
+        event.getNames().forEach(states::remove);
+    }
+
+    int trackedAccounts() {
+        return states.size();
+    }
+
+    public ReconciliationReportDTO getLastReport() {
+        return lastReport;
+    }
+
+    @Scheduled(initialDelayString = "${bank.reconciliation.interval-millis:60000}",
+            fixedDelayString = "${bank.reconciliation.interval-millis:60000}")
+    public void reconcile() {
+        durationTimer.record(this::scan);
+    }
+
+    private void scan() {
+        Instant startedAt = Instant.now();
+        long startedNanos = System.nanoTime();
+        int scanned = 0;
+        int skipped = 0;
+        double expectedTotal = 0.0;
+        double ledgerTotal = 0.0;
+        List<AccountDriftDTO> driftAccounts = new ArrayList<>();
+
+        long lastId = 0;
+        while (true) {
+            long afterId = lastId;
+            List<Account> chunk = readOnlyTransaction.execute(status ->
+                    accountRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, chunkSize)));
+            if (chunk == null || chunk.isEmpty()) {
+                break;
+            }
+            for (Account account : chunk) {
+                AccountDriftDTO checked = check(account);
+                if (checked == null) {
+                    skipped++;
+                    continue;
+                }
+                scanned++;
+                expectedTotal += checked.getExpectedBalance();
+                ledgerTotal += checked.getActualBalance();
+                if (Math.abs(checked.getExpectedBalance() - checked.getActualBalance()) > EPSILON) {
+                    driftAccounts.add(checked);
+                }
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+            pause();
+        }
+
+        ReconciliationReportDTO report = ReconciliationReportDTO.builder()
+                .runs(lastReport.getRuns() + 1)
+                .startedAt(startedAt)
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos))
+                .accountsScanned(scanned)
+                .accountsSkipped(skipped)
+                .expectedTotal(expectedTotal)
+                .ledgerTotal(ledgerTotal)
+                .drift(ledgerTotal - expectedTotal)
+                .driftAccounts(List.copyOf(driftAccounts))
+                .build();
+        lastReport = report;
+        if (!driftAccounts.isEmpty()) {
+            log.error("MoneyReconciler{} reconcile(): drift " + report.getDrift()
+                    + " on accounts " + driftAccounts + ".");
+        }
+    }
+
+    /**
+     * Аккаунт без состояния заводится из прочитанной строки, только если по нему нет незавершенных
+     * транзакций: иначе строка может уже содержать сумму, которую commit добавит еще раз.
+     * Транзакция, зафиксированная до чтения строки, к этому моменту либо еще числится в pending,
+     * либо уже создала состояние
+     * @return ожидаемый и фактический баланс или null, если аккаунт менялся во время проверки
+     */
+    private AccountDriftDTO check(Account account) {
+        AccountState state = states.get(account.getName());
+        if (state == null) {
+            if (pending.containsKey(account.getName())) {
+                return null;
+            }
+            state = states.computeIfAbsent(account.getName(), name -> new AccountState(account.getBalance()));
+        }
+        synchronized (state) {
+            if (!state.unknown && Math.abs(state.expected - account.getBalance()) <= EPSILON) {
+                return new AccountDriftDTO(account.getName(), state.expected, account.getBalance());
+            }
+        }
+        return confirm(account, state);
+    }
+
+    /**
+     * Перечитывает аккаунт, окружив чтение проверкой версии его состояния, как seqlock:
+     * если до и после чтения не было незавершенных транзакций и версия не изменилась,
+     * прочитанный баланс соответствует ровно тем операциям, что учтены в ожидаемом
+     */
+    private AccountDriftDTO confirm(Account account, AccountState state) {
+        long version;
+        synchronized (state) {
+            if (pending.containsKey(account.getName())) {
+                return null;
+            }
+            version = state.version;
+        }
+        Optional<Account> fresh = readOnlyTransaction.execute(status -> accountRepository.findById(account.getId()));
+        synchronized (state) {
+            if (pending.containsKey(account.getName()) || state.version != version
+                    || fresh == null || fresh.isEmpty()) {
+                return null;
+            }
+            if (state.unknown) {
+                state.expected = fresh.get().getBalance();
+                state.unknown = false;
+            }
+            return new AccountDriftDTO(account.getName(), state.expected, fresh.get().getBalance());
+        }
+    }
+
+    private void commit(AccountChangedEvent event) {
+        AccountState state = states.computeIfAbsent(event.getName(),
+                name -> new AccountState(event.getBalance() - event.getDelta()));
+        synchronized (state) {
+            state.expected += event.getDelta();
+            state.version++;
+        }
+    }
+
+    private void pause() {
+        if (chunkPauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(chunkPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ожидаемое состояние одного аккаунта, доступ под его монитором
+     */
+    private static class AccountState {
+
+        private double expected;
+
+        /**
+         * Растет при каждой зафиксированной транзакции по аккаунту
+         */
+        private long version;
+
+        /**
+         * Исход одной из транзакций неизвестен, ожидаемый баланс нужно взять из леджера
+         */
+        private boolean unknown;
+
+        private AccountState(double expected) {
+            this.expected = expected;
+        }
+    }
+}
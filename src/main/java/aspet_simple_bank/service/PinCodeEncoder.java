@@ -0,0 +1,80 @@
+package aspet_simple_bank.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Хэширование пинкодов через PBKDF2-HMAC-SHA256 с индивидуальной солью.
+ * Хэш хранится вместе с параметрами: pbkdf2$итерации$соль$хэш,
+ * поэтому число итераций можно поднимать, не ломая уже сохраненные пинкоды
+ */
+@Component
+public class PinCodeEncoder {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int iterations;
+
+    public PinCodeEncoder(@Value("${bank.pin.hash-iterations:600000}") int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param pinCode - пинкод в открытом виде
+     * @return строка с параметрами, солью и хэшем для хранения в Account.pinCode
+     */
+    public String encode(String pinCode) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + "$" + iterations
+                + "$" + base64.encodeToString(salt)
+                + "$" + base64.encodeToString(hash(pinCode, salt, iterations));
+    }
+
+    /**
+     * Сравнение выполняется за постоянное время
+     * @param pinCode - пинкод в открытом виде
+     * @param encoded - сохраненный результат encode
+     * @return true, если пинкод соответствует хэшу
+     */
+    public boolean matches(String pinCode, String encoded) {
+        if (pinCode == null || encoded == null) {
+            return false;
+        }
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return false;
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        try {
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = hash(pinCode, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] hash(String pinCode, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(pinCode.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Проверка пинкодов с коротким кэшем недавно подтвержденных учетных данных.
+ * Медленный хэш считается только при промахе кэша. В кэше хранится не пинкод,
+ * а HMAC от сохраненного хэша и пинкода на ключе, который живет только в памяти процесса.
+ * Неверный пинкод в кэш не попадает и всегда проходит через медленный хэш,
+ * поэтому кэш не облегчает подбор
+ */
+@Component
+public class PinCodeVerifier {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final PinCodeEncoder pinCodeEncoder;
+    private final long ttlMillis;
+    private final Map<String, CachedCredential> cache;
+    private final SecretKeySpec cacheKey;
+    private final ThreadLocal<Mac> macs;
+
+    public PinCodeVerifier(
+            PinCodeEncoder pinCodeEncoder,
+            @Value("${bank.pin.cache-ttl-millis:60000}") long ttlMillis,
+            @Value("${bank.pin.cache-max-size:10000}") int maxSize) {
+        this.pinCodeEncoder = pinCodeEncoder;
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCredential> eldest) {
+                return size() > maxSize;
+            }
+        };
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, MAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * @param pinCode - пинкод в открытом виде
+     * @return значение для хранения в Account.pinCode
+     */
+    public String encode(String pinCode) {
+        return pinCodeEncoder.encode(pinCode);
+    }
+
+    /**
+     * @param account - аккаунт с сохраненным хэшем пинкода
+     * @param pinCode - пинкод, введенный пользователем
+     * @return true, если пинкод верный
+     */
+    public boolean matches(Account account, String pinCode) {
+        return matches(account.getName(), account.getPinCode(), pinCode);
+    }
+
+    /**
+     * @param name - имя аккаунта
+     * @param encoded - сохраненный хэш пинкода
+     * @param pinCode - пинкод, введенный пользователем
+     * @return true, если пинкод верный
+     */
+    public boolean matches(String name, String encoded, String pinCode) {
+        return matches(name, encoded, pinCode, System.currentTimeMillis());
+    }
+
+    boolean matches(String name, String encoded, String pinCode, long nowMillis) {
+        if (encoded == null || pinCode == null) {
+            return false;
+        }
+        byte[] digest = digest(encoded, pinCode);
+        CachedCredential cached;
+        synchronized (cache) {
+            cached = cache.get(name);
+        }
+        if (cached != null && cached.expiresAtMillis > nowMillis && MessageDigest.isEqual(cached.digest, digest)) {
+            return true;
+        }
+        if (!pinCodeEncoder.matches(pinCode, encoded)) {
+            return false;
+        }
+        synchronized (cache) {
+            cache.put(name, new CachedCredential(digest, nowMillis + ttlMillis));
+        }
+        return true;
+    }
+
+    int cachedCredentials() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private byte[] digest(String encoded, String pinCode) {
+        Mac mac = macs.get();
+        mac.update(encoded.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(pinCode.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(cacheKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static class CachedCredential {
+
+        private final byte[] digest;
+        private final long expiresAtMillis;
+
+        private CachedCredential(byte[] digest, long expiresAtMillis) {
+            this.digest = digest;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.dto.VelocityLimitsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Проверка частоты списаний с аккаунта в памяти, без обращений к базе.
+ * Для каждого аккаунта хранятся два скользящих окна фиксированного размера:
+ * количество списаний за минуту (60 корзин по секунде) и сумма списаний за час (60 корзин по минуте).
+ * Проверка и учет выполняются за O(1) и не создают объектов для уже известного аккаунта.
+ * Внутри транзакции списание сначала резервируется и учитывается в окнах только после коммита,
+ * при откате резерв снимается. Резервы транзакции собираются в один держатель, который создается
+ * на первой проверке в транзакции, последующие проверки в ней объектов не создают.
+ * Резервы участвуют в проверке, поэтому параллельные транзакции
+ * одного аккаунта не превышают лимит вместе.
+ * Лимиты можно заменить на лету, окна неактивных аккаунтов периодически удаляются
+ */
+@Slf4j
+@Component
+public class VelocityGuard {
+
+    private static final int BUCKETS = 60;
+    private static final long COUNT_BUCKET_MILLIS = 1_000L;
+    private static final long AMOUNT_BUCKET_MILLIS = 60_000L;
+    private static final long WINDOW_SPAN_MILLIS = AMOUNT_BUCKET_MILLIS * BUCKETS;
+
+    /**
+     * Окно может быть удалено очисткой между поиском и блокировкой. Тогда берется новое окно,
+     * а повторное удаление только что созданного окна означает ошибку в расчете времени
+     */
+    private static final int MAX_WINDOW_ATTEMPTS = 3;
+
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    private volatile VelocityLimitsDTO limits;
+
+    public VelocityGuard(
+            @Value("${bank.velocity.max-transfers-per-minute:0}") int maxTransfersPerMinute,
+            @Value("${bank.velocity.max-amount-per-hour:0}") double maxAmountPerHour) {
+        updateLimits(new VelocityLimitsDTO(maxTransfersPerMinute, maxAmountPerHour));
+    }
+
+    public VelocityLimitsDTO getLimits() {
+        VelocityLimitsDTO current = limits;
+        return new VelocityLimitsDTO(current.getMaxTransfersPerMinute(), current.getMaxAmountPerHour());
+    }
+
+    /**
+     * Метод для замены лимитов без перезапуска приложения.
+     * Уже накопленная статистика окон сохраняется
+     * @param newLimits - новые лимиты
+     * @throws IllegalArgumentException если лимит отрицательный
+     */
+    public void updateLimits(VelocityLimitsDTO newLimits) {
+        if (newLimits.getMaxTransfersPerMinute() < 0 || newLimits.getMaxAmountPerHour() < 0) {
+            throw new IllegalArgumentException("Velocity limits can`t be negative");
+        }
+        limits = new VelocityLimitsDTO(newLimits.getMaxTransfersPerMinute(), newLimits.getMaxAmountPerHour());
+        log.info("VelocityGuard{} updateLimits(): " + limits);
+    }
+
+    /**
+     * Проверяет, укладывается ли списание в лимиты, и учитывает его в окнах аккаунта.
+     * В транзакции списание учитывается после коммита, а до него занимает резерв
+     * @param name - имя аккаунта, с которого списываются средства
+     * @param amount - сумма списания
+     * @throws TooManyRequestsException если списание превышает лимит
+     */
+    public void checkAndRecord(String name, double amount) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            checkAndRecord(name, amount, System.currentTimeMillis());
+            return;
+        }
+        Window window = reserve(name, amount, System.currentTimeMillis());
+        if (window == null) {
+            return;
+        }
+        Reservations reservations = (Reservations) TransactionSynchronizationManager.getResource(this);
+        if (reservations == null) {
+            reservations = new Reservations();
+            TransactionSynchronizationManager.bindResource(this, reservations);
+            TransactionSynchronizationManager.registerSynchronization(reservations);
+        }
+        reservations.add(window, amount);
+    }
+
+    void checkAndRecord(String name, double amount, long nowMillis) {
+        Window window = reserve(name, amount, nowMillis);
+        if (window != null) {
+            settle(window, amount, true, nowMillis);
+        }
+    }
+
+    /**
+     * Проверяет лимиты с учетом чужих резервов и резервирует списание
+     * @return окно с резервом или null, если лимиты отключены
+     */
+    private Window reserve(String name, double amount, long nowMillis) {
+        VelocityLimitsDTO current = limits;
+        if (current.getMaxTransfersPerMinute() == 0 && current.getMaxAmountPerHour() == 0) {
+            return null;
+        }
+        for (int attempt = 0; attempt < MAX_WINDOW_ATTEMPTS; attempt++) {
+            Window window = windows.computeIfAbsent(name, key -> new Window());
+            synchronized (window) {
+                if (!window.evicted) {
+                    check(window, current, name, amount, nowMillis);
+                    window.reservedCount++;
+                    window.reservedAmount += amount;
+                    return window;
+                }
+            }
+            windows.remove(name, window);
+        }
+        throw new IllegalStateException("Velocity window of " + name + " was evicted " + MAX_WINDOW_ATTEMPTS + " times");
+    }
+
+    /**
+     * Снимает резерв и, если списание состоялось, учитывает его в окнах.
+     * Окно с резервом не удаляется очисткой, поэтому оно все еще в windows
+     */
+    private static void settle(Window window, double amount, boolean recorded, long nowMillis) {
+        synchronized (window) {
+            window.reservedCount--;
+            window.reservedAmount -= amount;
+            if (recorded) {
+                window.advance(nowMillis);
+                window.record(amount);
+            }
+        }
+    }
+
+    /**
+     * Вызывается под монитором окна
+     */
+    private static void check(Window window, VelocityLimitsDTO current, String name, double amount, long nowMillis) {
+        window.advance(nowMillis);
+        if (current.getMaxTransfersPerMinute() > 0
+                && window.countTotal + window.reservedCount + 1 > current.getMaxTransfersPerMinute()) {
+            throw new TooManyRequestsException(
+                    "Account " + name + " exceeded " + current.getMaxTransfersPerMinute() + " transfers per minute");
+        }
+        if (current.getMaxAmountPerHour() > 0
+                && window.amountTotal + window.reservedAmount + amount > current.getMaxAmountPerHour()) {
+            throw new TooManyRequestsException(
+                    "Account " + name + " exceeded " + current.getMaxAmountPerHour() + " per hour");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bank.velocity.eviction-interval-millis:60000}")
+    public void evictIdleWindows() {
+        evictIdleWindows(System.currentTimeMillis());
+    }
+
+    void evictIdleWindows(long nowMillis) {
+        windows.values().removeIf(window -> {
+            synchronized (window) {
+                window.evicted = window.reservedCount == 0
+                        && nowMillis - window.lastTouchedMillis >= WINDOW_SPAN_MILLIS;
+                return window.evicted;
+            }
+        });
+    }
+
+    int trackedAccounts() {
+        return windows.size();
+    }
+
+    /**
+     * Резервы одной транзакции. Держатель привязан к транзакции как ресурс и отвязывается,
+     * пока она приостановлена, поэтому вложенная REQUIRES_NEW транзакция собирает свои резервы
+     */
+    private class Reservations implements TransactionSynchronization {
+
+        private Window[] windows = new Window[4];
+        private double[] amounts = new double[4];
+        private int size;
+
+        private void add(Window window, double amount) {
+            if (size == windows.length) {
+                windows = Arrays.copyOf(windows, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            windows[size] = window;
+            amounts[size] = amount;
+            size++;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(VelocityGuard.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(VelocityGuard.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(VelocityGuard.this);
+            long nowMillis = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                settle(windows[i], amounts[i], status != STATUS_ROLLED_BACK, nowMillis);
+            }
+        }
+    }
+
+    /**
+     * Пара кольцевых буферов одного аккаунта, доступ под монитором самого окна
+     */
+    private static class Window {
+
+        private final int[] counts = new int[BUCKETS];
+        private final double[] amounts = new double[BUCKETS];
+        private long countHead = -1;
+        private long amountHead = -1;
+        private int countTotal;
+        private double amountTotal;
+        private int reservedCount;
+        private double reservedAmount;
+        private long lastTouchedMillis;
+        private boolean evicted;
+
+        /**
+         * Сдвигает окна к текущему времени, обнуляя устаревшие корзины.
+         * Обнуляется не больше BUCKETS корзин на окно
+         */
+        private void advance(long nowMillis) {
+            long countSlot = nowMillis / COUNT_BUCKET_MILLIS;
+            long gap = countSlot - countHead;
+            if (countHead < 0 || gap >= BUCKETS) {
+                Arrays.fill(counts, 0);
+                countTotal = 0;
+            } else {
+                for (long slot = countHead + 1; slot <= countSlot; slot++) {
+                    int index = (int) (slot % BUCKETS);
+                    countTotal -= counts[index];
+                    counts[index] = 0;
+                }
+            }
+            countHead = Math.max(countHead, countSlot);
+
+            long amountSlot = nowMillis / AMOUNT_BUCKET_MILLIS;
+            gap = amountSlot - amountHead;
+            if (amountHead < 0 || gap >= BUCKETS) {
+                Arrays.fill(amounts, 0.0);
+                amountTotal = 0.0;
+            } else {
+                for (long slot = amountHead + 1; slot <= amountSlot; slot++) {
+                    int index = (int) (slot % BUCKETS);
+                    amountTotal -= amounts[index];
+                    amounts[index] = 0.0;
+                }
+            }
+            amountHead = Math.max(amountHead, amountSlot);
+            lastTouchedMillis = Math.max(lastTouchedMillis, nowMillis);
+        }
+
+        private void record(double amount) {
+            counts[(int) (countHead % BUCKETS)]++;
+            countTotal++;
+            amounts[(int) (amountHead % BUCKETS)] += amount;
+            amountTotal += amount;
+        }
+    }
+}
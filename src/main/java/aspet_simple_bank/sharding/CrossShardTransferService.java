@@ -0,0 +1,286 @@
+package aspet_simple_bank.sharding;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.ShardUnavailableException;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.domain_model.TransferIntent;
+import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.factory.AccountDTOFactory;
+import aspet_simple_bank.service.ChangeSequence;
+import aspet_simple_bank.service.PinCodeVerifier;
+import aspet_simple_bank.service.VelocityGuard;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.TransferIntentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Межшардовый перевод по двухфазному протоколу "резерв - фиксация".
+ * Координатор - шард отправителя: он списывает сумму и записывает намерение RESERVED,
+ * затем просит шард получателя подготовиться (PREPARED). Решение о фиксации записывается
+ * как COMMITTING до того, как получателю отправляется commit, поэтому если получатель был
+ * недоступен или координатор не закончил перевод, восстановление знает, что делать:
+ * RESERVED откатывается с возвратом суммы, COMMITTING повторяет commit до успеха.
+ * Получатель зачисляет сумму только по commit, а все его методы идемпотентны.
+ * Журнал живет в базе H2 в памяти, поэтому перезапуск экземпляра не покрывается
+ */
+@Slf4j
+@Service
+public class CrossShardTransferService {
+
+    static final String PARTICIPANT_PATH = "/internal/shard/transfers/";
+
+    private final AccountRepository accountRepository;
+    private final TransferIntentRepository transferIntentRepository;
+    private final AccountDTOFactory accountDTOFactory;
+    private final PinCodeVerifier pinCodeVerifier;
+    private final VelocityGuard velocityGuard;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeSequence changeSequence;
+    private final ShardRing shardRing;
+    private final ShardClient shardClient;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration inDoubtTimeout;
+
+    public CrossShardTransferService(
+            AccountRepository accountRepository,
+            TransferIntentRepository transferIntentRepository,
+            AccountDTOFactory accountDTOFactory,
+            PinCodeVerifier pinCodeVerifier,
+            VelocityGuard velocityGuard,
+            ApplicationEventPublisher eventPublisher,
+            ChangeSequence changeSequence,
+            ShardRing shardRing,
+            ShardClient shardClient,
+            PlatformTransactionManager transactionManager,
+            @Value("${bank.sharding.in-doubt-timeout-millis:10000}") long inDoubtTimeoutMillis) {
+        this.accountRepository = accountRepository;
+        this.transferIntentRepository = transferIntentRepository;
+        this.accountDTOFactory = accountDTOFactory;
+        this.pinCodeVerifier = pinCodeVerifier;
+        this.velocityGuard = velocityGuard;
+        this.eventPublisher = eventPublisher;
+        this.changeSequence = changeSequence;
+        this.shardRing = shardRing;
+        this.shardClient = shardClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.inDoubtTimeout = Duration.ofMillis(inDoubtTimeoutMillis);
+    }
+
+    /**
+     * Метод для перевода на аккаунт, который хранится на другом шарде
+     * @param nameFrom - имя аккаунта - отправителя, хранится на этом шарде
+     * @param nameTo - имя аккаунта - получателя, хранится на другом шарде
+     * @param pinCode - пинкод аккаунта - отправителя
+     * @param amount - сумма перевода
+     * @return аккаунт отправителя после списания
+     */
+    public AccountDTO transfer(String nameFrom, String nameTo, String pinCode, double amount) {
+        String transferId = UUID.randomUUID().toString();
+        String target = shardRing.ownerOf(nameTo);
+        boolean pinCodeMatches = accountRepository.findPinCodeByName(nameFrom)
+                .map(encoded -> pinCodeVerifier.matches(nameFrom, encoded, pinCode))
+                .orElse(false);
+        if (!pinCodeMatches) {
+            throw rejectTransfer(nameFrom, nameTo);
+        }
+        Account reserved = transactionTemplate.execute(status -> reserve(transferId, nameFrom, nameTo, amount));
+
+        ShardClient.Outcome prepared = shardClient.call(target, PARTICIPANT_PATH + transferId + "/prepare",
+                Map.of("nameFrom", nameFrom, "nameTo", nameTo, "amount", amount));
+        if (prepared != ShardClient.Outcome.OK) {
+            abortSource(transferId);
+            if (prepared == ShardClient.Outcome.REJECTED) {
+                throw new BadRequestException("Check accounts names or pin code "
+                        + "or sum of transfer is higher then balance on account " + nameFrom + " is");
+            }
+            throw new ShardUnavailableException("Shard " + target + " is not available, transfer is cancelled");
+        }
+
+        Integer decided = transactionTemplate.execute(status -> transferIntentRepository.transition(transferId,
+                TransferIntent.State.RESERVED, TransferIntent.State.COMMITTING, Instant.now()));
+        if (decided == null || decided == 0) {
+            throw new ShardUnavailableException("Transfer " + transferId + " timed out and was cancelled");
+        }
+        commitTarget(transferId, target);
+        return accountDTOFactory.createAccountDTO(reserved);
+    }
+
+    /**
+     * Участник: проверяет получателя и запоминает перевод, баланс не меняется
+     */
+    public void prepare(String transferId, String nameFrom, String nameTo, double amount) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Optional<TransferIntent> existing = transferIntentRepository.findById(transferId);
+            if (existing.isPresent()) {
+                if (existing.get().getState() == TransferIntent.State.ABORTED) {
+                    throw new BadRequestException("Transfer " + transferId + " was aborted");
+                }
+                return;
+            }
+            if (accountRepository.findAccountByName(nameTo).isEmpty()) {
+                throw new BadRequestException("Account " + nameTo + " not found");
+            }
+            transferIntentRepository.save(TransferIntent.builder()
+                    .id(transferId)
+                    .role(TransferIntent.Role.TARGET)
+                    .state(TransferIntent.State.PREPARED)
+                    .nameFrom(nameFrom)
+                    .nameTo(nameTo)
+                    .amount(amount)
+                    .updatedAt(Instant.now())
+                    .build());
+        });
+    }
+
+    /**
+     * Участник: зачисляет подготовленный перевод; повторный вызов ничего не меняет
+     */
+    public void commit(String transferId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (transferIntentRepository.transition(transferId,
+                    TransferIntent.State.PREPARED, TransferIntent.State.COMMITTED, Instant.now()) == 0) {
+                Optional<TransferIntent> existing = transferIntentRepository.findById(transferId);
+                if (existing.isEmpty() || existing.get().getState() != TransferIntent.State.COMMITTED) {
+                    throw new BadRequestException("Transfer " + transferId + " is not prepared");
+                }
+                return;
+            }
+            TransferIntent intent = transferIntentRepository.findById(transferId).orElseThrow();
+            Account accountTo = accountRepository.findAccountByNameForUpdate(intent.getNameTo()).orElseThrow(
+                    () -> new IllegalStateException("Prepared account " + intent.getNameTo() + " disappeared"));
+            accountTo.setBalance(accountTo.getBalance() + intent.getAmount());
+            accountRepository.save(accountTo);
+            eventPublisher.publishEvent(new AccountChangedEvent(accountTo.getName(), accountTo.getBalance(),
+                    intent.getAmount(), AccountChangedEvent.ChangeType.TRANSFER_IN, changeSequence.next()));
+        });
+    }
+
+    /**
+     * Участник: отменяет перевод. Если prepare еще не приходил, остается запись ABORTED,
+     * чтобы запоздавший prepare был отклонен
+     */
+    public void abort(String transferId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (transferIntentRepository.transition(transferId,
+                    TransferIntent.State.PREPARED, TransferIntent.State.ABORTED, Instant.now()) > 0) {
+                return;
+            }
+            Optional<TransferIntent> existing = transferIntentRepository.findById(transferId);
+            if (existing.isEmpty()) {
+                transferIntentRepository.save(TransferIntent.builder()
+                        .id(transferId)
+                        .role(TransferIntent.Role.TARGET)
+                        .state(TransferIntent.State.ABORTED)
+                        .nameFrom("")
+                        .nameTo("")
+                        .amount(0.0)
+                        .updatedAt(Instant.now())
+                        .build());
+            } else if (existing.get().getState() == TransferIntent.State.COMMITTED) {
+                throw new BadRequestException("Transfer " + transferId + " is already committed");
+            }
+        });
+    }
+
+    /**
+     * Доводит до конца переводы, которые координатор не завершил из-за сбоя связи с получателем
+     */
+    @Scheduled(fixedDelayString = "${bank.sharding.recovery-interval-millis:5000}")
+    public void recoverInDoubtTransfers() {
+        if (!shardRing.isEnabled()) {
+            return;
+        }
+        Instant before = Instant.now().minus(inDoubtTimeout);
+        for (TransferIntent intent : transferIntentRepository.findByRoleAndStateAndUpdatedAtBefore(
+                TransferIntent.Role.SOURCE, TransferIntent.State.RESERVED, before)) {
+            log.warn("CrossShardTransferService{} recover(): aborting in-doubt transfer " + intent.getId() + ".");
+            abortSource(intent.getId());
+        }
+        for (TransferIntent intent : transferIntentRepository.findByRoleAndStateAndUpdatedAtBefore(
+                TransferIntent.Role.SOURCE, TransferIntent.State.COMMITTING, before)) {
+            log.warn("CrossShardTransferService{} recover(): retrying commit of transfer " + intent.getId() + ".");
+            commitTarget(intent.getId(), shardRing.ownerOf(intent.getNameTo()));
+        }
+    }
+
+    /**
+     * Координатор: списывает сумму под блокировкой отправителя. Пинкод уже проверен в transfer
+     * по чтению без блокировки, чтобы медленный хэш не держал строку
+     */
+    private Account reserve(String transferId, String nameFrom, String nameTo, double amount) {
+        Optional<Account> accountFrom = accountRepository.findAccountByNameForUpdate(nameFrom);
+        if (accountFrom.isEmpty() || accountFrom.get().getBalance() < amount) {
+            throw rejectTransfer(nameFrom, nameTo);
+        }
+        velocityGuard.checkAndRecord(nameFrom, amount);
+        Account account = accountFrom.get();
+        account.setBalance(account.getBalance() - amount);
+        accountRepository.save(account);
+        transferIntentRepository.save(TransferIntent.builder()
+                .id(transferId)
+                .role(TransferIntent.Role.SOURCE)
+                .state(TransferIntent.State.RESERVED)
+                .nameFrom(nameFrom)
+                .nameTo(nameTo)
+                .amount(amount)
+                .updatedAt(Instant.now())
+                .build());
+        eventPublisher.publishEvent(new AccountChangedEvent(account.getName(), account.getBalance(),
+                -amount, AccountChangedEvent.ChangeType.TRANSFER_OUT, changeSequence.next()));
+        return account;
+    }
+
+    private BadRequestException rejectTransfer(String nameFrom, String nameTo) {
+        log.error("CrossShardTransferService{} transfer(): "
+                + nameFrom + " tried to transfer on account: " + nameTo + ".");
+        return new BadRequestException("Check accounts names or pin code "
+                + "or sum of transfer is higher then balance on account " + nameFrom + " is");
+    }
+
+    /**
+     * Координатор: отменяет зарезервированный перевод и возвращает сумму отправителю.
+     * Условный переход RESERVED -> ABORTED не дает отменить перевод, по которому уже принято решение
+     */
+    private void abortSource(String transferId) {
+        TransferIntent aborted = transactionTemplate.execute(status -> {
+            if (transferIntentRepository.transition(transferId,
+                    TransferIntent.State.RESERVED, TransferIntent.State.ABORTED, Instant.now()) == 0) {
+                return null;
+            }
+            TransferIntent intent = transferIntentRepository.findById(transferId).orElseThrow();
+            accountRepository.findAccountByNameForUpdate(intent.getNameFrom()).ifPresent(account -> {
+                account.setBalance(account.getBalance() + intent.getAmount());
+                accountRepository.save(account);
+                eventPublisher.publishEvent(new AccountChangedEvent(account.getName(), account.getBalance(),
+                        intent.getAmount(), AccountChangedEvent.ChangeType.TRANSFER_REFUND, changeSequence.next()));
+            });
+            return intent;
+        });
+        if (aborted != null) {
+            shardClient.call(shardRing.ownerOf(aborted.getNameTo()), PARTICIPANT_PATH + transferId + "/abort", Map.of());
+        }
+    }
+
+    private void commitTarget(String transferId, String target) {
+        if (shardClient.call(target, PARTICIPANT_PATH + transferId + "/commit", Map.of()) != ShardClient.Outcome.OK) {
+            log.warn("CrossShardTransferService{} commit(): transfer " + transferId
+                    + " is committed but " + target + " did not confirm, recovery will retry.");
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> transferIntentRepository.transition(transferId,
+                TransferIntent.State.COMMITTING, TransferIntent.State.COMMITTED, Instant.now()));
+    }
+}
@@ -0,0 +1,188 @@
+package aspet_simple_bank.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * HTTP-клиент между экземплярами: пересылка запросов владельцу аккаунта
+ * и вызовы участника межшардового перевода
+ */
+@Slf4j
+@Component
+public class ShardClient {
+
+    static final String FORWARDED_HEADER = "X-Bank-Forwarded";
+
+    /**
+     * Общий секрет кластера в вызовах участника перевода
+     */
+    public static final String SECRET_HEADER = "X-Bank-Shard-Secret";
+
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "host", "connection", "content-length", "transfer-encoding", "keep-alive", "upgrade");
+
+    private final RestTemplate restTemplate;
+    private final String secret;
+
+    public ShardClient(
+            RestTemplateBuilder restTemplateBuilder,
+            @Value("${bank.sharding.secret:}") String secret,
+            @Value("${bank.sharding.connect-timeout-millis:1000}") long connectTimeoutMillis,
+            @Value("${bank.sharding.read-timeout-millis:5000}") long readTimeoutMillis) {
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
+                .errorHandler(new PassThroughErrorHandler())
+                .build();
+        this.secret = secret;
+    }
+
+    /**
+     * Результат вызова участника перевода
+     */
+    public enum Outcome {
+        OK,
+        /**
+         * Участник ответил отказом, повтор не поможет
+         */
+        REJECTED,
+        /**
+         * Участник недоступен или ответил ошибкой, исход неизвестен
+         */
+        UNAVAILABLE
+    }
+
+    /**
+     * Пересылает входящий запрос на другой экземпляр и копирует его ответ
+     * @param node - базовый URL экземпляра-владельца
+     */
+    public void forward(String node, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String query = request.getQueryString();
+        URI uri;
+        byte[] body;
+        boolean form = isForm(request);
+        if (form) {
+            // тело формы уже прочитано при разборе параметров, поэтому пересылаются сами параметры
+            uri = URI.create(node + request.getRequestURI());
+            body = formBody(request.getParameterMap());
+        } else {
+            uri = URI.create(node + request.getRequestURI() + (query != null ? "?" + query : ""));
+            body = StreamUtils.copyToByteArray(request.getInputStream());
+        }
+        HttpHeaders headers = new HttpHeaders();
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase()) && !SECRET_HEADER.equalsIgnoreCase(name)) {
+                headers.put(name, Collections.list(request.getHeaders(name)));
+            }
+        }
+        headers.set(FORWARDED_HEADER, "true");
+        if (form) {
+            headers.setContentType(new MediaType(MediaType.APPLICATION_FORM_URLENCODED, StandardCharsets.UTF_8));
+        }
+
+        ResponseEntity<byte[]> forwarded;
+        try {
+            forwarded = restTemplate.exchange(uri, HttpMethod.valueOf(request.getMethod()),
+                    new HttpEntity<>(body.length > 0 ? body : null, headers), byte[].class);
+        } catch (ResourceAccessException e) {
+            log.error("ShardClient{} forward(): " + uri + " is not available.", e);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Shard " + node + " is not available");
+            return;
+        }
+        response.setStatus(forwarded.getStatusCodeValue());
+        forwarded.getHeaders().forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        if (forwarded.getBody() != null) {
+            response.getOutputStream().write(forwarded.getBody());
+        }
+    }
+
+    private static boolean isForm(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null
+                && MediaType.APPLICATION_FORM_URLENCODED.includes(MediaType.parseMediaType(contentType));
+    }
+
+    /**
+     * Параметры из строки запроса и из тела формы собираются в одно тело формы
+     */
+    private static byte[] formBody(Map<String, String[]> parameters) {
+        StringJoiner body = new StringJoiner("&");
+        parameters.forEach((name, values) -> {
+            for (String value : values) {
+                body.add(URLEncoder.encode(name, StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(value, StandardCharsets.UTF_8));
+            }
+        });
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Вызывает служебный метод участника межшардового перевода
+     * @param node - базовый URL участника
+     * @param path - путь служебного метода
+     * @param parameters - параметры запроса
+     */
+    public Outcome call(String node, String path, Map<String, ?> parameters) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node).path(path);
+        parameters.forEach((name, value) -> uri.queryParam(name, value));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(FORWARDED_HEADER, "true");
+        headers.set(SECRET_HEADER, secret);
+        try {
+            ResponseEntity<Void> result = restTemplate.exchange(uri.build().encode().toUri(), HttpMethod.POST,
+                    new HttpEntity<>(headers), Void.class);
+            if (result.getStatusCode().is2xxSuccessful()) {
+                return Outcome.OK;
+            }
+            return result.getStatusCode().is4xxClientError() ? Outcome.REJECTED : Outcome.UNAVAILABLE;
+        } catch (ResourceAccessException e) {
+            log.warn("ShardClient{} call(): " + node + path + " is not available: " + e.getMessage());
+            return Outcome.UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Ответы с ошибками передаются вызывающему как есть, без исключений
+     */
+    private static class PassThroughErrorHandler implements ResponseErrorHandler {
+
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package aspet_simple_bank.sharding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Кольцо консистентного хэширования имен аккаунтов по экземплярам приложения.
+ * Каждый экземпляр занимает несколько виртуальных узлов, поэтому при добавлении
+ * экземпляра на него переезжает примерно 1/N аккаунтов. Хэш не зависит от JVM,
+ * так что все экземпляры с одинаковым списком узлов строят одинаковое кольцо.
+ * Пустой список узлов означает работу без шардирования
+ */
+@Component
+public class ShardRing {
+
+    private static final String TICKET_SEPARATOR = ".";
+
+    private final List<String> nodes;
+
+    /**
+     * Узлы по алфавиту: порядок в bank.sharding.nodes на разных экземплярах может отличаться
+     */
+    private final List<String> sortedNodes;
+    private final String self;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ShardRing(
+            @Value("${bank.sharding.nodes:}") String nodes,
+            @Value("${bank.sharding.self:}") String self,
+            @Value("${bank.sharding.virtual-nodes:128}") int virtualNodes) {
+        this.nodes = Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .collect(Collectors.toUnmodifiableList());
+        this.sortedNodes = this.nodes.stream().sorted().collect(Collectors.toUnmodifiableList());
+        this.self = self.trim();
+        if (!this.nodes.isEmpty() && !this.nodes.contains(this.self)) {
+            throw new IllegalStateException("bank.sharding.self " + self + " is not one of bank.sharding.nodes " + nodes);
+        }
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * @param name - имя аккаунта
+     * @return базовый URL экземпляра, который хранит аккаунт
+     */
+    public String ownerOf(String name) {
+        if (!isEnabled()) {
+            return self;
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(name));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @param name - имя аккаунта
+     * @return true, если аккаунт хранится на другом экземпляре
+     */
+    public boolean isRemote(String name) {
+        return isEnabled() && !self.equals(ownerOf(name));
+    }
+
+    /**
+     * Добавляет к идентификатору заявки асинхронного перевода номер этого экземпляра среди узлов по алфавиту,
+     * чтобы запрос статуса с любого экземпляра можно было переслать принявшему заявку
+     * @param ticket - идентификатор заявки, выданный локальным конвейером
+     */
+    public String tagTicket(String ticket) {
+        return isEnabled() ? sortedNodes.indexOf(self) + TICKET_SEPARATOR + ticket : ticket;
+    }
+
+    /**
+     * @param ticket - идентификатор заявки, выданный клиенту
+     * @return идентификатор заявки в локальном конвейере
+     */
+    public String localTicket(String ticket) {
+        int separator = ticket.indexOf(TICKET_SEPARATOR);
+        return isEnabled() && separator >= 0 ? ticket.substring(separator + 1) : ticket;
+    }
+
+    /**
+     * @param ticket - идентификатор заявки, выданный клиенту
+     * @return базовый URL экземпляра, принявшего заявку, или null, если номер экземпляра не распознан
+     */
+    public String ownerOfTicket(String ticket) {
+        int separator = ticket.indexOf(TICKET_SEPARATOR);
+        if (!isEnabled() || separator <= 0) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(ticket.substring(0, separator));
+            return index >= 0 && index < sortedNodes.size() ? sortedNodes.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = hash << 8 | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package aspet_simple_bank.sharding;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * Маршрутизация запросов публичного API: запрос по аккаунту, который хранится
+ * на другом экземпляре, пересылается владельцу. Ключ маршрутизации - имя аккаунта из пути,
+ * иначе параметр nameFrom (перевод выполняет шард отправителя), иначе параметр name.
+ * Статус асинхронной заявки запрашивается у экземпляра, номер которого записан в ее идентификаторе.
+ * Запросы без имени аккаунта - список аккаунтов, поиск и поток изменений - обслуживаются
+ * локальным шардом и возвращают только его аккаунты
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShardRoutingInterceptor implements HandlerInterceptor {
+
+    static final String SHARD_HEADER = "X-Bank-Shard";
+
+    private final ShardRing shardRing;
+    private final ShardClient shardClient;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!shardRing.isEnabled()) {
+            return true;
+        }
+        String owner = owner(request);
+        if (owner != null && !owner.equals(shardRing.self())) {
+            if (request.getHeader(ShardClient.FORWARDED_HEADER) == null) {
+                // заголовок X-Bank-Shard придет в ответе владельца
+                shardClient.forward(owner, request, response);
+                return false;
+            }
+            log.warn("ShardRoutingInterceptor{} preHandle(): " + request.getRequestURI()
+                    + " was forwarded here but belongs to " + owner + ", check bank.sharding.nodes.");
+        }
+        response.setHeader(SHARD_HEADER, shardRing.self());
+        return true;
+    }
+
+    /**
+     * @return базовый URL экземпляра, который должен обслужить запрос, или null для любого экземпляра
+     */
+    @SuppressWarnings("unchecked")
+    private String owner(HttpServletRequest request) {
+        Map<String, String> pathVariables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (pathVariables != null && pathVariables.containsKey("name")) {
+            return shardRing.ownerOf(pathVariables.get("name"));
+        }
+        if (pathVariables != null && pathVariables.containsKey("ticket")) {
+            return shardRing.ownerOfTicket(pathVariables.get("ticket"));
+        }
+        String nameFrom = request.getParameter("nameFrom");
+        String name = nameFrom != null ? nameFrom : request.getParameter("name");
+        return name != null ? shardRing.ownerOf(name) : null;
+    }
+}
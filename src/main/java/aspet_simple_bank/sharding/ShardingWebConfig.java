@@ -0,0 +1,24 @@
+package aspet_simple_bank.sharding;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Подключает маршрутизацию по шардам к публичному API.
+ * Поток изменений остается локальным: каждый шард публикует изменения своих аккаунтов
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ShardingWebConfig implements WebMvcConfigurer {
+
+    private final ShardRoutingInterceptor shardRoutingInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(shardRoutingInterceptor)
+                .addPathPatterns("/api/**")
+                .excludePathPatterns("/api/accounts/stream");
+    }
+}
@@ -0,0 +1,47 @@
+package aspet_simple_bank.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.Arrays;
+
+/**
+ * Настройки быстрого старта, профиль faststart
+ */
+@Slf4j
+@Configuration
+public class FastStartConfig {
+
+    /**
+     * При ленивой инициализации бины с @Scheduled не создались бы, пока их кто-нибудь не запросит,
+     * и фоновые задачи (сверка, восстановление переводов, очистка окон лимитов) не запустились бы
+     */
+    @Bean
+    static LazyInitializationExcludeFilter scheduledBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType != null
+                && Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(beanType))
+                .anyMatch(method -> AnnotatedElementUtils.hasAnnotation(method, Scheduled.class));
+    }
+
+    /**
+     * Обучающий запуск для архива AppCDS: приложение стартует, прогревается и сразу завершается,
+     * JVM при выходе записывает загруженные классы в архив
+     */
+    @Bean
+    @ConditionalOnProperty(name = "bank.startup.exit-after-ready", havingValue = "true")
+    ApplicationListener<ApplicationReadyEvent> exitAfterReady() {
+        return event -> {
+            log.info("FastStartConfig{} exitAfterReady(): training run finished, exiting.");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        };
+    }
+}
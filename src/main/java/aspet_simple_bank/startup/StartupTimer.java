@@ -0,0 +1,65 @@
+package aspet_simple_bank.startup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Время от запуска JVM до готовности приложения и до ответа на первый запрос.
+ * Значения публикуются как метрики bank.startup.ready и bank.startup.first-request в миллисекундах
+ */
+@Slf4j
+@Component
+public class StartupTimer extends OncePerRequestFilter {
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicBoolean firstRequestServed = new AtomicBoolean();
+
+    private volatile long readyMillis = -1;
+    private volatile long firstRequestMillis = -1;
+
+    public StartupTimer(MeterRegistry meterRegistry) {
+        Gauge.builder("bank.startup.ready", this, timer -> timer.readyMillis).register(meterRegistry);
+        Gauge.builder("bank.startup.first-request", this, timer -> timer.firstRequestMillis).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        readyMillis = System.currentTimeMillis() - jvmStartMillis;
+        log.info("StartupTimer{} onReady(): ready " + readyMillis + " ms after JVM start.");
+    }
+
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    public long getFirstRequestMillis() {
+        return firstRequestMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (!firstRequestServed.get() && firstRequestServed.compareAndSet(false, true)) {
+                firstRequestMillis = System.currentTimeMillis() - jvmStartMillis;
+                log.info("StartupTimer{} doFilter(): first request " + request.getRequestURI()
+                        + " served " + firstRequestMillis + " ms after JVM start.");
+            }
+        }
+    }
+}
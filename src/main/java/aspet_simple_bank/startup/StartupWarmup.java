@@ -0,0 +1,62 @@
+package aspet_simple_bank.startup;
+
+import aspet_simple_bank.service.AccountService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+/**
+ * Прогрев перед готовностью приложения: ApplicationRunner выполняется до ApplicationReadyEvent,
+ * поэтому первый клиентский запрос уже не платит за создание ленивых бинов, загрузку классов
+ * Hibernate и первый расчет хэша пинкода. Все операции выполняются в одной транзакции,
+ * которая откатывается, поэтому леджер и версия данных не меняются.
+ * Список аккаунтов читается до изменений, чтобы в его кэш не попали временные аккаунты
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bank.warmup.enabled", havingValue = "true")
+public class StartupWarmup implements ApplicationRunner {
+
+    static final String PIN_CODE = "0000";
+
+    private final AccountService accountService;
+    private final TransactionTemplate transactionTemplate;
+
+    public StartupWarmup(AccountService accountService, PlatformTransactionManager transactionManager) {
+        this.accountService = accountService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long started = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                status.setRollbackOnly();
+                exerciseAccountService();
+            });
+            log.info("StartupWarmup{} run(): warm-up took " + (System.nanoTime() - started) / 1_000_000 + " ms.");
+        } catch (RuntimeException e) {
+            log.warn("StartupWarmup{} run(): warm-up failed, starting cold: " + e.getMessage());
+        }
+    }
+
+    private void exerciseAccountService() {
+        accountService.getAccounts();
+        String suffix = UUID.randomUUID().toString();
+        String from = "warmup-from-" + suffix;
+        String to = "warmup-to-" + suffix;
+        accountService.createAccount(from, PIN_CODE);
+        accountService.createAccount(to, PIN_CODE);
+        accountService.makeDeposit(from, PIN_CODE, 10.0);
+        accountService.withDrawDeposit(from, PIN_CODE, 1.0);
+        accountService.transfer(from, to, PIN_CODE, 1.0);
+        accountService.getAccount(to);
+    }
+}
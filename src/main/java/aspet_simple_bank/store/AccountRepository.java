@@ -1,13 +1,36 @@
 package aspet_simple_bank.store;
 
 import aspet_simple_bank.model.client.domain_model.Account;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.List;
 
+/**
+ * findAccountByName и findAll учитывают холодное хранилище, см. TieredAccountRepository
+ */
 @Repository
-public interface AccountRepository extends JpaRepository<Account, Long> {
+public interface AccountRepository extends JpaRepository<Account, Long>, TieredAccountRepository {
 
-    Optional<Account> findAccountByName(String name);
+    /**
+     * Постраничное чтение по ключу: следующая порция аккаунтов с id больше заданного
+     */
+    List<Account> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Аккаунты без записей с заданного момента; строки блокируются до конца транзакции вытеснения
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Account> findByLastActivityBeforeOrderByIdAsc(Instant cutoff, Pageable pageable);
+
+    /**
+     * Имена аккаунтов леджера без загрузки самих аккаунтов
+     */
+    @Query("select a.name from Account a")
+    List<String> findAllNames();
 }
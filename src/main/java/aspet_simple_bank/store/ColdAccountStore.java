@@ -0,0 +1,419 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Холодное хранилище давно не используемых аккаунтов: сегменты в файлах, сжатые GZIP.
+ * В памяти остается только индекс имя -> номер сегмента и баланс, по нему строится список
+ * аккаунтов без чтения сегментов. Холодный аккаунт не меняется, пока его не вернули в леджер,
+ * поэтому баланс в индексе всегда актуален. Сегмент пишется один раз и удаляется,
+ * когда из него вернули в леджер все аккаунты.
+ * Аккаунт возвращается в леджер в транзакции вызывающего и покидает индекс после ее коммита.
+ * Возвраты разных аккаунтов не ждут друг друга, возврат одного и того же - ждет не дольше fault-in-timeout.
+ * Коммиты перемещений между леджером и хранилищем выполняются под блокировкой записи,
+ * чтение списка всех аккаунтов - под блокировкой чтения, поэтому в списке аккаунт
+ * не пропадает и не дублируется во время перемещения.
+ * Леджер хранится в памяти, поэтому каталог сегментов создается заново при каждом запуске
+ */
+@Slf4j
+@Component
+public class ColdAccountStore {
+
+    /**
+     * Оценка накладных расходов H2 и индексов на одну строку account сверх самих полей
+     */
+    private static final int ROW_OVERHEAD_BYTES = 96;
+
+    private final Path directory;
+    private final AtomicInteger nextSegment = new AtomicInteger();
+    private final ConcurrentMap<String, ColdEntry> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock moves = new ReentrantReadWriteLock();
+
+    /**
+     * Блокировки возврата по имени аккаунта, держатся до завершения транзакции, которая его возвращает
+     */
+    private final ConcurrentMap<String, ReentrantLock> faultIns = new ConcurrentHashMap<>();
+    private final long faultInTimeoutNanos;
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final Timer faultInTimer;
+
+    public ColdAccountStore(
+            @Value("${bank.tiering.directory:${java.io.tmpdir}}") String baseDirectory,
+            @Value("${bank.tiering.fault-in-timeout-millis:10000}") long faultInTimeoutMillis,
+            MeterRegistry meterRegistry) throws IOException {
+        Path base = Files.createDirectories(Paths.get(baseDirectory));
+        this.directory = Files.createTempDirectory(base, "aspet-bank-cold-");
+        this.faultInTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(faultInTimeoutMillis);
+        this.faultInTimer = Timer.builder("bank.tiering.fault-in")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("bank.tiering.cold.accounts", index, ConcurrentMap::size).register(meterRegistry);
+        Gauge.builder("bank.tiering.cold.segments", segments, ConcurrentMap::size).register(meterRegistry);
+        Gauge.builder("bank.tiering.cold.bytes", this, ColdAccountStore::coldBytes).register(meterRegistry);
+        Gauge.builder("bank.tiering.reclaimed.bytes", reclaimedBytes, AtomicLong::get).register(meterRegistry);
+    }
+
+    /**
+     * Записывает аккаунты в новый файл сегмента. До publish сегмент не виден
+     */
+    public Segment write(List<Account> accounts) {
+        Segment segment = new Segment(nextSegment.incrementAndGet(), accounts.size());
+        Path file = file(segment.id);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file))))) {
+            out.writeInt(accounts.size());
+            for (Account account : accounts) {
+                out.writeUTF(account.getName());
+                out.writeUTF(account.getPinCode());
+                out.writeDouble(account.getBalance());
+                out.writeLong(account.getLastActivity() != null ? account.getLastActivity().toEpochMilli() : 0L);
+                segment.entries.add(new ColdEntry(account.getName(), segment.id, account.getBalance()));
+                segment.estimatedHotBytes += estimatedHotBytes(account);
+            }
+        } catch (IOException e) {
+            delete(file);
+            throw new UncheckedIOException("Can`t write cold segment " + file, e);
+        }
+        return segment;
+    }
+
+    /**
+     * Публикует сегмент после коммита транзакции, которая удалила его аккаунты из леджера,
+     * или удаляет файл, если транзакция откатилась. Вне транзакции публикует сразу
+     */
+    public void publishOnCommit(Segment segment) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            moves.writeLock().lock();
+            try {
+                publish(segment);
+            } finally {
+                moves.writeLock().unlock();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                moves.writeLock().lock();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        publish(segment);
+                    } else {
+                        delete(file(segment.id));
+                    }
+                } finally {
+                    if (moves.isWriteLockedByCurrentThread()) {
+                        moves.writeLock().unlock();
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * Возвращает аккаунт в леджер в текущей транзакции. Аккаунт покидает хранилище после ее коммита,
+     * при откате остается в хранилище. Пока транзакция не завершилась, другие транзакции ждут возврата
+     * этого же аккаунта. H2 этого ожидания не видит, поэтому оно ограничено fault-in-timeout,
+     * как ожидание блокировки строки - LOCK_TIMEOUT. Вне транзакции аккаунт покидает хранилище сразу
+     * @param name - имя аккаунта
+     * @param insert - вставка аккаунта в леджер в текущей транзакции
+     * @return true, если аккаунт был в хранилище и возвращен этим вызовом
+     * @throws CannotAcquireLockException если аккаунт дольше fault-in-timeout возвращает другая транзакция
+     */
+    public boolean faultIn(String name, Consumer<Account> insert) {
+        if (!index.containsKey(name)) {
+            return false;
+        }
+        long started = System.nanoTime();
+        ReentrantLock lock = lockFaultIn(name);
+        boolean releaseOnCompletion = false;
+        try {
+            ColdEntry entry = index.get(name);
+            if (entry == null) {
+                // аккаунт уже вернула транзакция, которую ждали
+                return false;
+            }
+            Optional<Account> cold = read(entry.segmentId, name);
+            if (cold.isEmpty()) {
+                return false;
+            }
+            insert.accept(cold.get());
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                moves.writeLock().lock();
+                try {
+                    remove(entry, cold.get());
+                } finally {
+                    moves.writeLock().unlock();
+                }
+                return true;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    moves.writeLock().lock();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    try {
+                        if (status == STATUS_COMMITTED) {
+                            remove(entry, cold.get());
+                        }
+                    } finally {
+                        if (moves.isWriteLockedByCurrentThread()) {
+                            moves.writeLock().unlock();
+                        }
+                        unlockFaultIn(name, lock);
+                    }
+                }
+            });
+            releaseOnCompletion = true;
+            return true;
+        } finally {
+            if (!releaseOnCompletion) {
+                unlockFaultIn(name, lock);
+            }
+            faultInTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Все аккаунты хранилища из индекса, без чтения сегментов. Заполнены только имя и баланс.
+     * Вызывать под listingLock
+     */
+    public List<Account> readAll() {
+        List<Account> accounts = new ArrayList<>(index.size());
+        for (ColdEntry entry : index.values()) {
+            accounts.add(Account.builder()
+                    .name(entry.name)
+                    .balance(entry.balance)
+                    .build());
+        }
+        return accounts;
+    }
+
+    /**
+     * Блокировка, под которой аккаунты не перемещаются между леджером и хранилищем
+     */
+    public Lock listingLock() {
+        return moves.readLock();
+    }
+
+    public Set<String> coldNames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public int coldAccounts() {
+        return index.size();
+    }
+
+    public int coldSegments() {
+        return segments.size();
+    }
+
+    public long coldBytes() {
+        long bytes = 0;
+        for (Integer segmentId : segments.keySet()) {
+            try {
+                bytes += Files.size(file(segmentId));
+            } catch (IOException e) {
+                // сегмент удален между чтением списка и размера
+            }
+        }
+        return bytes;
+    }
+
+    public long reclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public Timer faultInTimer() {
+        return faultInTimer;
+    }
+
+    @PreDestroy
+    public void close() {
+        try (var files = Files.list(directory)) {
+            files.forEach(ColdAccountStore::delete);
+        } catch (IOException e) {
+            log.warn("ColdAccountStore{} close(): can`t list " + directory + ": " + e.getMessage());
+        }
+        delete(directory);
+    }
+
+    private void publish(Segment segment) {
+        segments.put(segment.id, segment);
+        segment.entries.forEach(entry -> index.put(entry.name, entry));
+        segment.entries.clear();
+        reclaimedBytes.addAndGet(segment.estimatedHotBytes);
+    }
+
+    /**
+     * Вызывается под блокировкой записи после того, как аккаунт вернулся в леджер
+     */
+    private void remove(ColdEntry entry, Account account) {
+        index.remove(entry.name, entry);
+        reclaimedBytes.addAndGet(-estimatedHotBytes(account));
+        Segment segment = segments.get(entry.segmentId);
+        if (segment != null && segment.live.decrementAndGet() == 0) {
+            segments.remove(entry.segmentId);
+            delete(file(entry.segmentId));
+        }
+    }
+
+    /**
+     * Блокировка из faultIns удаляется при освобождении, поэтому после захвата проверяется,
+     * что она все еще та, что лежит в карте
+     */
+    private ReentrantLock lockFaultIn(String name) {
+        long deadline = System.nanoTime() + faultInTimeoutNanos;
+        while (true) {
+            ReentrantLock lock = faultIns.computeIfAbsent(name, key -> new ReentrantLock());
+            try {
+                if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new CannotAcquireLockException("Account " + name + " is being restored by another transaction");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CannotAcquireLockException("Interrupted while waiting to restore account " + name, e);
+            }
+            if (faultIns.get(name) == lock) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
+
+    private void unlockFaultIn(String name, ReentrantLock lock) {
+        faultIns.remove(name, lock);
+        lock.unlock();
+    }
+
+    private Optional<Account> read(int segmentId, String name) {
+        Account[] found = new Account[1];
+        scan(segmentId, account -> {
+            if (found[0] == null && account.getName().equals(name)) {
+                found[0] = account;
+            }
+        });
+        return Optional.ofNullable(found[0]);
+    }
+
+    private void scan(int segmentId, Consumer<Account> consumer) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file(segmentId)))))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(Account.builder()
+                        .name(in.readUTF())
+                        .pinCode(in.readUTF())
+                        .balance(in.readDouble())
+                        .lastActivity(Instant.ofEpochMilli(in.readLong()))
+                        .build());
+            }
+        } catch (NoSuchFileException e) {
+            // сегмент опустел и удален, его аккаунты уже в леджере
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can`t read cold segment " + segmentId, e);
+        }
+    }
+
+    private Path file(int segmentId) {
+        return directory.resolve("segment-" + segmentId + ".gz");
+    }
+
+    private static long estimatedHotBytes(Account account) {
+        return ROW_OVERHEAD_BYTES + 2L * account.getName().length() + account.getPinCode().length() + 3L * Long.BYTES;
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("ColdAccountStore{} delete(): can`t delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Файл сегмента и количество аккаунтов в нем, которые еще не вернулись в леджер
+     */
+    public static class Segment {
+
+        private final int id;
+        private final AtomicInteger live;
+        private final List<ColdEntry> entries = new ArrayList<>();
+        private long estimatedHotBytes;
+
+        private Segment(int id, int size) {
+            this.id = id;
+            this.live = new AtomicInteger(size);
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Запись индекса: сегмент, в котором лежит аккаунт, и его баланс для списка аккаунтов
+     */
+    private static class ColdEntry {
+
+        private final String name;
+        private final int segmentId;
+        private final double balance;
+
+        private ColdEntry(String name, int segmentId, double balance) {
+            this.name = name;
+            this.segmentId = segmentId;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Методы AccountRepository, которые учитывают аккаунты в холодном хранилище
+ */
+public interface TieredAccountRepository {
+
+    /**
+     * Аккаунт из холодного хранилища прозрачно возвращается в леджер при первом обращении
+     */
+    Optional<Account> findAccountByName(String name);
+
+    /**
+     * То же, что findAccountByName, но строка блокируется до конца транзакции (select ... for update).
+     * Для изменения баланса; несколько аккаунтов блокируются в порядке имен, чтобы не было взаимных блокировок
+     */
+    Optional<Account> findAccountByNameForUpdate(String name);
+
+    /**
+     * Хэш пинкода без загрузки аккаунта в контекст постоянства. Блокирующее чтение после проверки
+     * пинкода в той же сессии получает строку из базы, а не ранее загруженный экземпляр
+     */
+    Optional<String> findPinCodeByName(String name);
+
+    /**
+     * @return аккаунты леджера и холодного хранилища; холодные аккаунты не управляются EntityManager
+     * и содержат только имя и баланс
+     */
+    List<Account> findAll();
+}
@@ -0,0 +1,113 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Фрагмент AccountRepository. Возврат из холодного хранилища выполняется в транзакции вызывающего,
+ * второе соединение для него не нужно. Вставка сразу сбрасывается в базу, поэтому повторное чтение
+ * видит аккаунт как обычную строку леджера, и его можно изменять. Без транзакции вызывающего
+ * возврат выполняется в собственной
+ */
+public class TieredAccountRepositoryImpl implements TieredAccountRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ColdAccountStore coldAccountStore;
+    private final TransactionTemplate faultInTransaction;
+
+    public TieredAccountRepositoryImpl(ColdAccountStore coldAccountStore, PlatformTransactionManager transactionManager) {
+        this.coldAccountStore = coldAccountStore;
+        this.faultInTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public Optional<Account> findAccountByName(String name) {
+        return find(name, LockModeType.NONE);
+    }
+
+    @Override
+    public Optional<Account> findAccountByNameForUpdate(String name) {
+        return find(name, LockModeType.PESSIMISTIC_WRITE);
+    }
+
+    @Override
+    public List<Account> findAll() {
+        Lock lock = coldAccountStore.listingLock();
+        lock.lock();
+        try {
+            List<Account> accounts = new ArrayList<>(
+                    entityManager.createQuery("select a from Account a", Account.class).getResultList());
+            accounts.addAll(coldAccountStore.readAll());
+            return accounts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> findPinCodeByName(String name) {
+        return find(name, LockModeType.NONE, String.class, "select a.pinCode from Account a where a.name = :name");
+    }
+
+    private Optional<Account> find(String name, LockModeType lockMode) {
+        return find(name, lockMode, Account.class, "select a from Account a where a.name = :name");
+    }
+
+    /**
+     * После промаха в леджере хранилище проверяется под listingLock, как в findAll(): пока перемещение
+     * коммитится, блокировка не дается, и аккаунт виден ровно в одном месте. Иначе возврат, закоммиченный
+     * между промахом и проверкой, выглядел бы как отсутствующий аккаунт. Леджер под listingLock читается
+     * без блокировки строк - перемещение держит и строки, и блокировку записи.
+     * Возвращенный аккаунт отсоединяется после вставки, в контексте остается только то, что вернул запрос
+     */
+    private <T> Optional<T> find(String name, LockModeType lockMode, Class<T> type, String query) {
+        Optional<T> hot = findHot(name, lockMode, type, query);
+        if (hot.isPresent()) {
+            return hot;
+        }
+        boolean cold;
+        Lock lock = coldAccountStore.listingLock();
+        lock.lock();
+        try {
+            cold = coldAccountStore.contains(name);
+            if (!cold && findHot(name, LockModeType.NONE, type, query).isEmpty()) {
+                return Optional.empty();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!cold) {
+            return findHot(name, lockMode, type, query);
+        }
+        faultInTransaction.executeWithoutResult(status -> coldAccountStore.faultIn(name, account -> {
+            entityManager.persist(account);
+            // в read-only транзакции Hibernate сам не сбрасывает изменения
+            entityManager.flush();
+            entityManager.detach(account);
+        }));
+        return findHot(name, lockMode, type, query);
+    }
+
+    private <T> Optional<T> findHot(String name, LockModeType lockMode, Class<T> type, String query) {
+        List<T> found = entityManager.createQuery(query, type)
+                .setParameter("name", name)
+                .setLockMode(lockMode)
+                .getResultList();
+        if (found.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, found.size());
+        }
+        return found.stream().findFirst();
+    }
+}
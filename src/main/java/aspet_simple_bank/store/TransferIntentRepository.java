@@ -0,0 +1,29 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.TransferIntent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface TransferIntentRepository extends JpaRepository<TransferIntent, String> {
+
+    List<TransferIntent> findByRoleAndStateAndUpdatedAtBefore(
+            TransferIntent.Role role, TransferIntent.State state, Instant updatedBefore);
+
+    /**
+     * Условный переход состояния: выполняется, только если запись все еще в состоянии from
+     * @return количество измененных записей, 0 или 1
+     */
+    @Modifying
+    @Query("update TransferIntent t set t.state = :to, t.updatedAt = :now where t.id = :id and t.state = :from")
+    int transition(@Param("id") String id,
+                   @Param("from") TransferIntent.State from,
+                   @Param("to") TransferIntent.State to,
+                   @Param("now") Instant now);
+}
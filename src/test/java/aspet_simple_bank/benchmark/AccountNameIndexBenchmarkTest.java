@@ -0,0 +1,79 @@
+package aspet_simple_bank.benchmark;
+
+import aspet_simple_bank.service.AccountNameIndex;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.ColdAccountStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Задержка поиска по префиксу и с опечатками на миллионах имен.
+ * Запуск: mvn -B test -Pbenchmark -Dtest=AccountNameIndexBenchmarkTest
+ */
+@Tag("benchmark")
+class AccountNameIndexBenchmarkTest {
+
+    static final int NAMES = Integer.getInteger("bench.search.names", 2_000_000);
+    static final int QUERIES = Integer.getInteger("bench.search.queries", 20_000);
+
+    static final String[] FIRST = {"Alex", "Anna", "Bob", "Boris", "Dart", "Elena", "Ivan", "Maria", "Olga", "Petr"};
+
+    @Test
+    void measureLookupLatencyOnMillionsOfNames() {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(NAMES);
+        for (int i = 0; i < NAMES; i++) {
+            names.add(FIRST[random.nextInt(FIRST.length)] + " " + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36));
+        }
+        AccountRepository accountRepository = mock(AccountRepository.class, withSettings().stubOnly());
+        doReturn(names).when(accountRepository).findAllNames();
+        ColdAccountStore coldAccountStore = mock(ColdAccountStore.class, withSettings().stubOnly());
+        doReturn(Set.of()).when(coldAccountStore).coldNames();
+        AccountNameIndex index = new AccountNameIndex(accountRepository, coldAccountStore, 1024);
+
+        long loadStarted = System.nanoTime();
+        index.load();
+        System.out.printf("indexed %d names in %d ms%n", index.size(), (System.nanoTime() - loadStarted) / 1_000_000);
+
+        measure("prefix", index, random, names, 0);
+        measure("fuzzy=1", index, random, names, 1);
+        measure("fuzzy=2", index, random, names, 2);
+
+        long insertStarted = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            index.add("New account " + i);
+        }
+        System.out.printf("incremental insert: %.1f us per name%n", (System.nanoTime() - insertStarted) / 1e3 / 10_000);
+        assertEquals(List.of("New account 0", "New account 1"), index.search("New account ", 0, 0, 2));
+    }
+
+    private static void measure(String label, AccountNameIndex index, Random random, List<String> names, int fuzzy) {
+        long[] latencies = new long[QUERIES];
+        long found = 0;
+        for (int i = 0; i < QUERIES + QUERIES / 10; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            String prefix = name.substring(0, Math.min(name.length(), 6 + random.nextInt(3)));
+            long started = System.nanoTime();
+            List<String> result = index.search(prefix, fuzzy, 0, 20);
+            long elapsed = System.nanoTime() - started;
+            if (i >= QUERIES / 10) {
+                latencies[i - QUERIES / 10] = elapsed;
+                found += result.size();
+            }
+            assertFalse(result.isEmpty());
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%s: p50 %.1f us, p99 %.1f us, max %.1f us, %.1f results per query%n", label,
+                latencies[QUERIES / 2] / 1e3, latencies[QUERIES * 99 / 100] / 1e3,
+                latencies[QUERIES - 1] / 1e3, (double) found / QUERIES);
+    }
+}
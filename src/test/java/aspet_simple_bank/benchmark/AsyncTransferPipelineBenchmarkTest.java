@@ -0,0 +1,119 @@
+package aspet_simple_bank.benchmark;
+
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.service.AsyncTransferPipeline;
+import aspet_simple_bank.service.ChangeSequence;
+import aspet_simple_bank.service.PinCodeEncoder;
+import aspet_simple_bank.service.PinCodeVerifier;
+import aspet_simple_bank.service.VelocityGuard;
+import aspet_simple_bank.store.AccountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Пропускная способность однописательского конвейера переводов и поведение очереди при перегрузке.
+ * Хранилище заменено на память, поэтому замер показывает стоимость самого конвейера.
+ * Запуск: mvn -B test -Pbenchmark -Dtest=AsyncTransferPipelineBenchmarkTest
+ */
+@Tag("benchmark")
+class AsyncTransferPipelineBenchmarkTest {
+
+    static final int PRODUCERS = Integer.getInteger("bench.async.producers", 8);
+    static final int ACCOUNTS = Integer.getInteger("bench.async.accounts", 64);
+    static final int CAPACITY = Integer.getInteger("bench.async.capacity", 65_536);
+    static final long SECONDS = Long.getLong("bench.async.seconds", 10L);
+
+    @Test
+    void measureSustainedThroughputAndQueueDepthUnderOverload() throws Exception {
+        Map<String, Account> accounts = new ConcurrentHashMap<>();
+        PinCodeEncoder pinCodeEncoder = new PinCodeEncoder(1_000);
+        String encodedPin = pinCodeEncoder.encode("1234");
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.put("account-" + i, Account.builder()
+                    .id(i + 1)
+                    .name("account-" + i)
+                    .pinCode(encodedPin)
+                    .balance(1_000_000_000.0D)
+                    .build());
+        }
+        AccountRepository accountRepository = mock(AccountRepository.class, withSettings().stubOnly());
+        doAnswer(invocation -> Optional.ofNullable(accounts.get(invocation.<String>getArgument(0))))
+                .when(accountRepository).findAccountByName(anyString());
+        doAnswer(invocation -> Optional.ofNullable(accounts.get(invocation.<String>getArgument(0))))
+                .when(accountRepository).findAccountByNameForUpdate(anyString());
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class, withSettings().stubOnly());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        AsyncTransferPipeline pipeline = new AsyncTransferPipeline(accountRepository,
+                new PinCodeVerifier(pinCodeEncoder, 600_000L, 10_000), new VelocityGuard(0, 0.0D),
+                event -> { }, new ChangeSequence(), transactionManager, meterRegistry, CAPACITY, 256, 1 << 20, 50);
+        pipeline.start();
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int seed = p;
+            producers[p] = new Thread(() -> {
+                long i = seed;
+                while (producing.get()) {
+                    String from = "account-" + (i % ACCOUNTS);
+                    String to = "account-" + ((i * 7 + 3) % ACCOUNTS);
+                    try {
+                        pipeline.submit(from, to, "1234", 1.0D);
+                        accepted.incrementAndGet();
+                    } catch (TooManyRequestsException e) {
+                        rejected.incrementAndGet();
+                        LockSupport.parkNanos(1_000);
+                    }
+                    i += PRODUCERS;
+                }
+            });
+            producers[p].start();
+        }
+
+        long maxDepth = 0;
+        long depthSum = 0;
+        long samples = 0;
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(SECONDS);
+        while (System.nanoTime() < deadline) {
+            long depth = pipeline.queueDepth();
+            maxDepth = Math.max(maxDepth, depth);
+            depthSum += depth;
+            samples++;
+            Thread.sleep(10);
+        }
+        producing.set(false);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        pipeline.stop();
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        System.out.printf("producers: %d, accounts: %d, ring capacity: %d%n", PRODUCERS, ACCOUNTS, CAPACITY);
+        System.out.printf("accepted: %d (%.0f transfers/s), rejected as overload: %d (%.1f%%)%n",
+                accepted.get(), accepted.get() / elapsedSeconds, rejected.get(),
+                100.0 * rejected.get() / Math.max(1, accepted.get() + rejected.get()));
+        System.out.printf("queue depth: max %d, mean %.0f%n", maxDepth, (double) depthSum / Math.max(1, samples));
+        assertTrue(maxDepth <= CAPACITY);
+        assertEquals(0, pipeline.queueDepth());
+        double total = accounts.values().stream().mapToDouble(Account::getBalance).sum();
+        assertEquals(ACCOUNTS * 1_000_000_000.0D, total, 1e-3);
+    }
+}
@@ -0,0 +1,125 @@
+package aspet_simple_bank.benchmark;
+
+import aspet_simple_bank.Application;
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.service.AccountService;
+import aspet_simple_bank.service.MoneyReconciler;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пропускная способность переводов без сверки и со сверкой, которая сканирует леджер непрерывно
+ * (интервал bench.reconciler.interval-millis, без пауз между порциями). Режимы чередуются,
+ * для каждого берется медиана прогонов, каждый прогон - в новом экземпляре приложения.
+ * Запуск: mvn -B test -Pbenchmark -Dtest=MoneyReconcilerBenchmarkTest
+ */
+@Tag("benchmark")
+class MoneyReconcilerBenchmarkTest {
+
+    static final int THREADS = Integer.getInteger("bench.reconciler.threads", 8);
+    static final int ACCOUNTS = Integer.getInteger("bench.reconciler.accounts", 1_000);
+    static final int ROUNDS = Integer.getInteger("bench.reconciler.rounds", 3);
+    static final long SECONDS = Long.getLong("bench.reconciler.seconds", 10L);
+    static final long INTERVAL_MILLIS = Long.getLong("bench.reconciler.interval-millis", 100L);
+
+    static final String PIN_CODE = "1234";
+
+    @Test
+    void measureTransferThroughputOverhead() {
+        double[] without = new double[ROUNDS];
+        double[] with = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            without[round] = run(false);
+            with[round] = run(true);
+        }
+        Arrays.sort(without);
+        Arrays.sort(with);
+        double baseline = without[ROUNDS / 2];
+        double reconciled = with[ROUNDS / 2];
+        System.out.printf("threads: %d, accounts: %d, %d s per run, scan interval %d ms%n",
+                THREADS, ACCOUNTS, SECONDS, INTERVAL_MILLIS);
+        System.out.printf("without reconciler: median %.0f transfers/s, runs %s%n", baseline, Arrays.toString(without));
+        System.out.printf("with reconciler: median %.0f transfers/s, runs %s%n", reconciled, Arrays.toString(with));
+        System.out.printf("overhead: %.2f%%%n", 100.0 * (baseline - reconciled) / baseline);
+    }
+
+    private static double run(boolean reconcile) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:reconciler-" + System.nanoTime() + ";LOCK_TIMEOUT=10000",
+                "--bank.pin.hash-iterations=1000",
+                "--bank.reconciliation.enabled=" + reconcile,
+                "--bank.reconciliation.interval-millis=" + INTERVAL_MILLIS,
+                "--bank.reconciliation.chunk-pause-millis=0",
+                "--springdoc.api-docs.enabled=false")) {
+            AccountService accountService = context.getBean(AccountService.class);
+            String[] names = new String[ACCOUNTS];
+            for (int i = 0; i < ACCOUNTS; i++) {
+                names[i] = "account-" + i;
+                accountService.createAccount(names[i], PIN_CODE);
+                accountService.makeDeposit(names[i], PIN_CODE, 1_000_000.0D);
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong transfers = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        try {
+                            accountService.transfer(names[random.nextInt(ACCOUNTS)], names[random.nextInt(ACCOUNTS)],
+                                    PIN_CODE, 1.0D);
+                            transfers.incrementAndGet();
+                        } catch (BadRequestException e) {
+                            // сумма больше баланса, для замера не важно
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            long started = System.nanoTime();
+            sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+            running.set(false);
+            threads.forEach(MoneyReconcilerBenchmarkTest::join);
+            double throughput = transfers.get() / ((System.nanoTime() - started) / 1e9);
+
+            if (reconcile) {
+                MoneyReconciler moneyReconciler = context.getBean(MoneyReconciler.class);
+                moneyReconciler.reconcile();
+                assertTrue(moneyReconciler.getLastReport().getRuns() > 1);
+                assertEquals(0.0D, moneyReconciler.getLastReport().getDrift(), 1e-6);
+            }
+            return throughput;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package aspet_simple_bank.benchmark;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.service.PinCodeEncoder;
+import aspet_simple_bank.service.PinCodeVerifier;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Стоимость проверки пинкода на один запрос с кэшем и без него.
+ * Запуск: mvn -B test -Pbenchmark -Dtest=PinCodeVerifierBenchmarkTest
+ */
+@Tag("benchmark")
+class PinCodeVerifierBenchmarkTest {
+
+    static final int ITERATIONS = Integer.getInteger("bench.pin.iterations", 600_000);
+    static final int REQUESTS = Integer.getInteger("bench.pin.requests", 20);
+
+    PinCodeEncoder pinCodeEncoder = new PinCodeEncoder(ITERATIONS);
+
+    Account bob = Account.builder()
+            .name("Bob Marley")
+            .pinCode(pinCodeEncoder.encode("1234"))
+            .build();
+
+    @Test
+    void measureAuthenticationCostPerRequest() {
+        PinCodeVerifier uncached = new PinCodeVerifier(pinCodeEncoder, 0L, 10_000);
+        PinCodeVerifier cached = new PinCodeVerifier(pinCodeEncoder, 60_000L, 10_000);
+
+        double uncachedMicros = microsPerRequest(uncached, REQUESTS);
+        double cachedMicros = microsPerRequest(cached, REQUESTS * 1_000);
+
+        System.out.printf("PBKDF2 iterations: %d%n", ITERATIONS);
+        System.out.printf("without cache: %.1f us/request, %.1f requests/s per core%n",
+                uncachedMicros, 1_000_000 / uncachedMicros);
+        System.out.printf("with cache:    %.3f us/request, %.1f requests/s per core%n",
+                cachedMicros, 1_000_000 / cachedMicros);
+        assertTrue(cachedMicros < uncachedMicros);
+    }
+
+    private double microsPerRequest(PinCodeVerifier verifier, int requests) {
+        assertTrue(verifier.matches(bob, "1234"));
+        long started = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            assertTrue(verifier.matches(bob, "1234"));
+        }
+        return (double) TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started) / requests;
+    }
+}
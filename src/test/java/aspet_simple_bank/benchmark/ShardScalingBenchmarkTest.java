@@ -0,0 +1,77 @@
+package aspet_simple_bank.benchmark;
+
+import aspet_simple_bank.sharding.ShardCluster;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пропускная способность переводов при 1, 2 и 4 шардах. Все экземпляры запускаются в одной JVM
+ * и делят процессор, поэтому замер показывает накладные расходы маршрутизации и двухфазных переводов,
+ * а не предельное масштабирование на отдельных машинах.
+ * Запуск: mvn -B test -Pbenchmark -Dtest=ShardScalingBenchmarkTest
+ */
+@Tag("benchmark")
+class ShardScalingBenchmarkTest {
+
+    static final int CLIENTS = Integer.getInteger("bench.shards.clients", 16);
+    static final int ACCOUNTS = Integer.getInteger("bench.shards.accounts", 200);
+    static final long SECONDS = Long.getLong("bench.shards.seconds", 10L);
+
+    @Test
+    void measureTransferThroughputFromOneToFourShards() throws Exception {
+        for (int shards : new int[] {1, 2, 4}) {
+            try (ShardCluster cluster = ShardCluster.start(shards)) {
+                for (int i = 0; i < ACCOUNTS; i++) {
+                    cluster.exchange(0, HttpMethod.POST, "/api/create", Map.of("name", "account-" + i, "pin_code", "1234"));
+                    cluster.exchange(0, HttpMethod.PATCH, "/api/makeDeposit",
+                            Map.of("name", "account-" + i, "pin_code", "1234", "deposit", 1_000_000));
+                }
+                measure(cluster, shards);
+                assertEquals(ACCOUNTS * 1_000_000.0D, cluster.totalBalance(), 1e-3);
+            }
+        }
+    }
+
+    private static void measure(ShardCluster cluster, int shards) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        Thread[] clients = new Thread[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            int seed = c;
+            clients[c] = new Thread(() -> {
+                long i = seed;
+                while (running.get()) {
+                    String from = "account-" + (i % ACCOUNTS);
+                    String to = "account-" + ((i * 7 + 3) % ACCOUNTS);
+                    var response = cluster.exchange((int) (i % shards), HttpMethod.PATCH, "/api/transfer",
+                            Map.of("nameFrom", from, "nameTo", to, "pin_code", "1234", "remittance", 1));
+                    if (response.getStatusCode().is2xxSuccessful()) {
+                        completed.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    i += CLIENTS;
+                }
+            });
+            clients[c].start();
+        }
+        long started = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+        running.set(false);
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("shards: %d, clients: %d, accounts: %d -> %.0f transfers/s, failed: %d%n",
+                shards, CLIENTS, ACCOUNTS, completed.get() / elapsedSeconds, failed.get());
+    }
+}
@@ -0,0 +1,137 @@
+package aspet_simple_bank.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Время до первого успешного запроса к /api/accounts с момента запуска отдельной JVM:
+ * обычный профиль, профиль faststart и faststart с архивом AppCDS, если он собран (mvn -B package -Pfaststart).
+ * Запуск: mvn -B test -Pbenchmark -Dtest=StartupBenchmarkTest
+ */
+@Tag("benchmark")
+class StartupBenchmarkTest {
+
+    static final int RUNS = Integer.getInteger("bench.startup.runs", 3);
+    static final long TIMEOUT_SECONDS = Long.getLong("bench.startup.timeout-seconds", 120L);
+
+    static final Path TARGET = Paths.get("target");
+    static final Path CDS_ARCHIVE = TARGET.resolve("app.jsa");
+
+    @Test
+    void measureTimeToFirstRequest() throws Exception {
+        String testClasspath = System.getProperty("java.class.path");
+        long baseline = median("default", List.of(), testClasspath, "default");
+        long fastStart = median("faststart", List.of(), testClasspath, "faststart");
+        assertTrue(fastStart > 0 && baseline > 0);
+
+        String appClasspath = appClasspath();
+        if (Files.exists(CDS_ARCHIVE) && appClasspath != null) {
+            median("faststart + AppCDS", List.of("-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Xshare:auto"),
+                    appClasspath, "faststart");
+        } else {
+            System.out.println("faststart + AppCDS: skipped, run mvn -B package -Pfaststart first");
+        }
+    }
+
+    private static long median(String label, List<String> jvmOptions, String classpath, String profile)
+            throws Exception {
+        long[] runs = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            runs[i] = timeToFirstRequest(jvmOptions, classpath, profile);
+        }
+        Arrays.sort(runs);
+        System.out.printf("%s: time to first request median %d ms, runs %s%n", label, runs[RUNS / 2],
+                Arrays.toString(runs));
+        return runs[RUNS / 2];
+    }
+
+    private static long timeToFirstRequest(List<String> jvmOptions, String classpath, String profile)
+            throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classpath);
+        command.add("aspet_simple_bank.Application");
+        command.add("--server.port=" + port);
+        command.add("--spring.profiles.active=" + profile);
+        command.add("--bank.pin.hash-iterations=1000");
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            long deadline = started + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (System.nanoTime() < deadline) {
+                assertTrue(process.isAlive(), () -> "application exited with code " + process.exitValue());
+                if (respondsOk(port)) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+                Thread.sleep(10);
+            }
+            return fail("application did not answer within " + TIMEOUT_SECONDS + " s");
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static boolean respondsOk(int port) {
+        try {
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL("http://localhost:" + port + "/api/accounts").openConnection();
+            connection.setConnectTimeout(100);
+            connection.setReadTimeout(10_000);
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Тот же classpath, что и у обучающего запуска в профиле faststart, иначе JVM не примет архив
+     */
+    private static String appClasspath() throws IOException {
+        Path lib = TARGET.resolve("lib");
+        if (!Files.isDirectory(lib)) {
+            return null;
+        }
+        try (var jars = Files.list(TARGET)) {
+            return jars.filter(path -> path.toString().endsWith("-SNAPSHOT.jar"))
+                    .findFirst()
+                    .map(jar -> jar.toAbsolutePath() + File.pathSeparator + lib.toAbsolutePath() + File.separator + "*")
+                    .orElse(null);
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package aspet_simple_bank.controller;
 
 import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.NotFoundException;
 import aspet_simple_bank.model.client.domain_model.Account;
 import aspet_simple_bank.model.client.dto.AccountDTO;
 import aspet_simple_bank.model.client.factory.AccountDTOFactory;
+import aspet_simple_bank.service.AccountChangeStream;
+import aspet_simple_bank.service.AccountNameIndex;
 import aspet_simple_bank.service.AccountService;
+import aspet_simple_bank.service.LedgerVersion;
+import aspet_simple_bank.sharding.CrossShardTransferService;
+import aspet_simple_bank.sharding.ShardRing;
 import aspet_simple_bank.store.AccountRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,6 +20,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -35,6 +42,21 @@ class AccountControllerTest {
     @Mock
     AccountDTOFactory dtoFactory;
 
+    @Mock
+    AccountChangeStream accountChangeStream;
+
+    @Mock
+    LedgerVersion ledgerVersion;
+
+    @Mock
+    ShardRing shardRing;
+
+    @Mock
+    CrossShardTransferService crossShardTransferService;
+
+    @Mock
+    AccountNameIndex accountNameIndex;
+
     @InjectMocks
     AccountController accountController;
 
@@ -63,20 +85,23 @@ class AccountControllerTest {
     @Test
     void whenGetAllAccountsDTO_ThenReturnsValidResponseEntity() {
         doReturn(dtoList).when(this.accountService).getAccounts();
+        doReturn("\"e.1\"").when(this.ledgerVersion).etag();
 
-        var responseEntity = this.accountController.getAllAccounts();
+        var responseEntity = this.accountController.getAllAccounts(null);
 
         assertNotNull(responseEntity);
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, responseEntity.getHeaders().getContentType());
+        assertEquals("\"e.1\"", responseEntity.getHeaders().getETag());
         assertEquals(dtoList, responseEntity.getBody());
     }
 
     @Test
     void whenGetAllAccountsDTO_ThenReturnsInvalidResponseEntity() {
         doReturn(new ArrayList<>()).when(this.accountService).getAccounts();
+        doReturn("\"e.1\"").when(this.ledgerVersion).etag();
 
-        var responseEntity = this.accountController.getAllAccounts();
+        var responseEntity = this.accountController.getAllAccounts(null);
 
         assertNotNull(responseEntity);
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
@@ -84,6 +109,50 @@ class AccountControllerTest {
         assertNotEquals(dtoList, responseEntity.getBody());
     }
 
+    @Test
+    void whenGetAllAccountsWithMatchingEtag_ThenReturnsNotModifiedWithoutReadingAccounts() {
+        doReturn("\"e.1\"").when(this.ledgerVersion).etag();
+
+        var responseEntity = this.accountController.getAllAccounts("W/\"e.0\", \"e.1\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, responseEntity.getStatusCode());
+        assertNull(responseEntity.getBody());
+        verify(accountService, never()).getAccounts();
+    }
+
+    @Test
+    void whenGetAccountWithStaleEtag_ThenReturnsAccount() {
+        AccountDTO bobDTO = AccountDTO.builder().name(bob.getName()).balance(bob.getBalance()).build();
+        doReturn("\"e.2\"").when(this.ledgerVersion).accountEtag(bob.getName());
+        doReturn(bobDTO).when(this.accountService).getAccount(bob.getName());
+
+        var responseEntity = this.accountController.getAccount(bob.getName(), "\"e.1\"");
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals("\"e.2\"", responseEntity.getHeaders().getETag());
+        assertEquals(bobDTO, responseEntity.getBody());
+    }
+
+    @Test
+    void whenGetMissingAccountWithWildcardEtag_ThenNotFound() {
+        doReturn(null).when(this.ledgerVersion).accountEtag("Nobody");
+        doThrow(new NotFoundException("Account Nobody not found")).when(this.accountService).getAccount("Nobody");
+
+        assertThrows(NotFoundException.class, () -> this.accountController.getAccount("Nobody", "*"));
+    }
+
+    @Test
+    void whenStreamWithLastEventId_ThenHeaderTakesPrecedenceOverSince() {
+        SseEmitter emitter = new SseEmitter();
+        doReturn(emitter)
+                .when(this.accountChangeStream)
+                .subscribe(List.of(bob.getName()), "kq3x.42");
+
+        var result = this.accountController.streamAccountChanges(List.of(bob.getName()), "kq3x.42", "kq3x.7");
+
+        assertSame(emitter, result);
+    }
+
     @Test
     void whenCreateAccount_ThenReturnsValidResponseEntity() {
         doReturn(Optional.of(bob))
@@ -259,4 +328,44 @@ class AccountControllerTest {
         assertNotNull(responseEntity);
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenTransferToRemoteShard_ThenDelegatesToCrossShardTransfer() {
+        double sumToTransfer = 30.0D;
+        AccountDTO afterTransfer = new AccountDTO(bob.getName(), bob.getBalance() - sumToTransfer);
+        doReturn(true).when(this.shardRing).isRemote(dart.getName());
+        doReturn(afterTransfer)
+                .when(this.crossShardTransferService)
+                .transfer(bob.getName(), dart.getName(), bob.getPinCode(), sumToTransfer);
+
+        var responseEntity = this.accountController.transfer(
+                bob.getName(),
+                dart.getName(),
+                bob.getPinCode(),
+                sumToTransfer
+        );
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(afterTransfer, responseEntity.getBody());
+        verify(accountService, never()).transfer(any(), any(), any(), anyDouble());
+    }
+
+    @Test
+    void whenSearchHasMoreResults_ThenReturnsPageAndHasMore() {
+        doReturn(List.of("Bob Dylan", "Bob Marley", "Bobby Brown"))
+                .when(this.accountNameIndex).search("Bob", 1, 0, 3);
+
+        var responseEntity = this.accountController.searchAccounts("Bob", 1, 2, 0);
+
+        assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
+        assertEquals(List.of("Bob Dylan", "Bob Marley"), responseEntity.getBody().getNames());
+        assertTrue(responseEntity.getBody().isHasMore());
+    }
+
+    @Test
+    void whenSearchFuzzyIsTooHigh_ThenThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> this.accountController.searchAccounts("Bob", 3, 20, 0));
+
+        verify(accountNameIndex, never()).search(any(), anyInt(), anyInt(), anyInt());
+    }
+}
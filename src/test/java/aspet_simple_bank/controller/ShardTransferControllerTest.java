@@ -0,0 +1,62 @@
+package aspet_simple_bank.controller;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.ForbiddenException;
+import aspet_simple_bank.sharding.CrossShardTransferService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ShardTransferControllerTest {
+
+    static final String SECRET = "cluster-secret";
+
+    @Mock
+    CrossShardTransferService crossShardTransferService;
+
+    ShardTransferController shardTransferController;
+
+    @BeforeEach
+    public void initController() {
+        shardTransferController = new ShardTransferController(crossShardTransferService, SECRET);
+    }
+
+    @Test
+    void whenSecretIsValid_ThenTransferPrepared() {
+        var response = shardTransferController.prepare(SECRET, "tx-1", "Bob Marley", "Dart Vader", 30.0D);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(crossShardTransferService).prepare("tx-1", "Bob Marley", "Dart Vader", 30.0D);
+    }
+
+    @Test
+    void whenSecretIsMissingOrWrong_ThenForbidden() {
+        assertThrows(ForbiddenException.class,
+                () -> shardTransferController.prepare(null, "tx-1", "Bob Marley", "Dart Vader", 30.0D));
+        assertThrows(ForbiddenException.class, () -> shardTransferController.commit("guess", "tx-1"));
+        assertThrows(ForbiddenException.class, () -> shardTransferController.abort("", "tx-1"));
+        verifyNoInteractions(crossShardTransferService);
+    }
+
+    @Test
+    void whenAmountIsNotPositive_ThenBadRequest() {
+        assertThrows(BadRequestException.class,
+                () -> shardTransferController.prepare(SECRET, "tx-1", "Bob Marley", "Dart Vader", -30.0D));
+        assertThrows(BadRequestException.class,
+                () -> shardTransferController.prepare(SECRET, "tx-1", "Bob Marley", "Dart Vader", 0.0D));
+        verify(crossShardTransferService, never()).prepare(anyString(), anyString(), anyString(), anyDouble());
+    }
+
+    @Test
+    void whenSecretIsNotConfigured_ThenControllerIsNotCreated() {
+        assertThrows(IllegalStateException.class, () -> new ShardTransferController(crossShardTransferService, " "));
+    }
+}
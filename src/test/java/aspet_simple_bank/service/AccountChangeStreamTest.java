@@ -0,0 +1,123 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountChangeStreamTest {
+
+    static final String EPOCH = "kq3x";
+
+    AccountChangeStream accountChangeStream = new AccountChangeStream(EPOCH, 16, 2, 60_000L, 8);
+
+    @AfterEach
+    public void shutdownStream() {
+        accountChangeStream.shutdown();
+    }
+
+    @Test
+    void whenSubscriberIsStuck_ThenOthersStillReceiveChanges() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter stuck = new RecordingEmitter(release);
+        RecordingEmitter fast = new RecordingEmitter(null);
+        accountChangeStream.subscribe(stuck, null, null);
+        accountChangeStream.subscribe(fast, null, null);
+
+        accountChangeStream.onAccountChanged(change("Bob Marley", 1));
+        assertEquals(account(1), stuck.next());
+        assertEquals(account(1), fast.next());
+        for (long sequence = 2; sequence <= 6; sequence++) {
+            accountChangeStream.onAccountChanged(change("Bob Marley", sequence));
+            assertEquals(account(sequence), fast.next());
+        }
+        release.countDown();
+        assertEquals(account(2), stuck.next());
+        assertEquals(account(3), stuck.next());
+        assertEquals("event:" + AccountChangeStream.OVERFLOW_EVENT, stuck.next());
+    }
+
+    @Test
+    void whenOlderChangeOfAccountArrivesLate_ThenItIsSkipped() throws Exception {
+        RecordingEmitter live = new RecordingEmitter(null);
+        accountChangeStream.subscribe(live, null, null);
+
+        accountChangeStream.onAccountChanged(change("Bob Marley", 2));
+        accountChangeStream.onAccountChanged(change("Bob Marley", 1));
+        accountChangeStream.onAccountChanged(change("Dart Vader", 3));
+
+        assertEquals(account(2), live.next());
+        assertEquals(account(3), live.next());
+
+        RecordingEmitter resumed = new RecordingEmitter(null);
+        accountChangeStream.subscribe(resumed, List.of(), EPOCH + ".2");
+        assertEquals(account(3), resumed.next());
+
+        RecordingEmitter unknown = new RecordingEmitter(null);
+        accountChangeStream.subscribe(unknown, List.of(), EPOCH + ".1");
+        assertEquals("id:" + EPOCH + ".3\nevent:" + AccountChangeStream.RESYNC_EVENT, unknown.next());
+    }
+
+    @Test
+    void whenLastEventIdIsFromPreviousRun_ThenResyncInsteadOfReplay() throws Exception {
+        accountChangeStream.onAccountChanged(change("Bob Marley", 1));
+        accountChangeStream.onAccountChanged(change("Bob Marley", 2));
+        accountChangeStream.onAccountChanged(change("Dart Vader", 3));
+
+        RecordingEmitter previousRun = new RecordingEmitter(null);
+        accountChangeStream.subscribe(previousRun, List.of(), "kq2z.2");
+        assertEquals("id:" + EPOCH + ".3\nevent:" + AccountChangeStream.RESYNC_EVENT, previousRun.next());
+
+        RecordingEmitter withoutEpoch = new RecordingEmitter(null);
+        accountChangeStream.subscribe(withoutEpoch, List.of(), "2");
+        assertEquals("id:" + EPOCH + ".3\nevent:" + AccountChangeStream.RESYNC_EVENT, withoutEpoch.next());
+    }
+
+    private static String account(long sequence) {
+        return "id:" + EPOCH + "." + sequence + "\nevent:" + AccountChangeStream.CHANGE_EVENT;
+    }
+
+    private static AccountChangedEvent change(String name, long sequence) {
+        return new AccountChangedEvent(name, sequence, 1.0D, AccountChangedEvent.ChangeType.DEPOSIT, sequence);
+    }
+
+    /**
+     * Запоминает заголовки id и event каждого отправленного события, отправка может ждать release
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final CountDownLatch release;
+        private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+        private RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String text = builder.build().iterator().next().getData().toString();
+            sent.add(text.substring(0, text.indexOf("data:")).trim());
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private String next() throws InterruptedException {
+            String next = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next, "no event within 5 s");
+            return next;
+        }
+    }
+}
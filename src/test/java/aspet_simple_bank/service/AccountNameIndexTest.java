@@ -0,0 +1,81 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.ColdAccountStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountNameIndexTest {
+
+    @Mock
+    AccountRepository accountRepository;
+
+    @Mock
+    ColdAccountStore coldAccountStore;
+
+    AccountNameIndex accountNameIndex;
+
+    @BeforeEach
+    public void initIndex() {
+        accountNameIndex = new AccountNameIndex(accountRepository, coldAccountStore, 4);
+        doReturn(List.of("Bob Marley", "Bob Dylan", "Dart Vader", "Bobby Brown"))
+                .when(accountRepository).findAllNames();
+        doReturn(Set.of("Rob Halford")).when(coldAccountStore).coldNames();
+        accountNameIndex.load();
+    }
+
+    @Test
+    void whenSearchByPrefix_ThenReturnsSortedMatchesWithPagination() {
+        assertEquals(List.of("Bob Dylan", "Bob Marley", "Bobby Brown"), accountNameIndex.search("Bob", 0, 0, 10));
+        assertEquals(List.of("Bob Marley"), accountNameIndex.search("Bob", 0, 1, 1));
+        assertEquals(List.of(), accountNameIndex.search("Luke", 0, 0, 10));
+        assertEquals(5, accountNameIndex.search("", 0, 0, 10).size());
+    }
+
+    @Test
+    void whenSearchWithTypos_ThenExactMatchesComeFirst() {
+        assertEquals(List.of("Bob Dylan", "Bob Marley", "Bobby Brown", "Rob Halford"),
+                accountNameIndex.search("Bob", 1, 0, 10));
+        assertEquals(List.of("Bob Marley"), accountNameIndex.search("Bob Mraley", 2, 0, 10));
+        assertEquals(List.of("Rob Halford"), accountNameIndex.search("Bob", 1, 3, 10));
+        assertEquals(List.of(), accountNameIndex.search("Bob Mraley", 1, 0, 10));
+    }
+
+    @Test
+    void whenSearchInAnotherCase_ThenOriginalNamesAreReturned() {
+        accountNameIndex.add("BOB ROSS");
+        accountNameIndex.add("bob marley");
+
+        assertEquals(List.of("Bob Marley", "bob marley"), accountNameIndex.search("BOB M", 0, 0, 10));
+        assertEquals(List.of("Bob Dylan", "Bob Marley", "bob marley", "BOB ROSS", "Bobby Brown"),
+                accountNameIndex.search("bob", 0, 0, 10));
+        assertEquals(List.of("BOB ROSS"), accountNameIndex.search("bob rsos", 2, 0, 10));
+        assertEquals(List.of(), accountNameIndex.search("dart vaderx", 0, 0, 10));
+        assertEquals(List.of(), accountNameIndex.search("bob rossxbob ross", 2, 0, 10));
+    }
+
+    @Test
+    void whenAccountCreated_ThenIndexedIncrementallyAcrossMerges() {
+        for (String name : List.of("Bob Sinclar", "Bob Ross", "Boba Fett", "Bob Marley", "Bobo", "Bob Hope")) {
+            accountNameIndex.onAccountChanged(new AccountChangedEvent(name, 0.0D, 0.0D,
+                    AccountChangedEvent.ChangeType.CREATED, 0L));
+        }
+        accountNameIndex.onAccountChanged(new AccountChangedEvent("Ignored Deposit", 10.0D, 10.0D,
+                AccountChangedEvent.ChangeType.DEPOSIT, 0L));
+
+        assertEquals(10, accountNameIndex.size());
+        assertEquals(List.of("Bob Dylan", "Bob Hope", "Bob Marley", "Bob Ross", "Bob Sinclar",
+                "Boba Fett", "Bobby Brown", "Bobo"), accountNameIndex.search("Bob", 0, 0, 20));
+    }
+}
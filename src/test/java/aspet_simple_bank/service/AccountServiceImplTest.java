@@ -1,16 +1,23 @@
 package aspet_simple_bank.service;
 
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.TooManyRequestsException;
 import aspet_simple_bank.model.client.domain_model.Account;
 import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
 import aspet_simple_bank.model.client.factory.AccountDTOFactory;
 import aspet_simple_bank.store.AccountRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,6 +35,24 @@ class AccountServiceImplTest {
     @Mock
     AccountDTOFactory dtoFactory;
 
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    LedgerVersion ledgerVersion;
+
+    @Mock
+    VelocityGuard velocityGuard;
+
+    @Mock
+    PinCodeVerifier pinCodeVerifier;
+
+    @Mock
+    ChangeSequence changeSequence;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
     @InjectMocks
     AccountServiceImpl accountService;
 
@@ -54,6 +79,11 @@ class AccountServiceImplTest {
         dtoList.add(dtoFactory.createAccountDTO(dart));
         accountList.add(bob);
         accountList.add(dart);
+        lenient().doReturn(true).when(pinCodeVerifier).matches(anyString(), anyString(), anyString());
+        lenient().doReturn(Optional.of(bob)).when(accountRepository).findAccountByName(bob.getName());
+        lenient().doReturn(Optional.of(dart)).when(accountRepository).findAccountByName(dart.getName());
+        lenient().doReturn(Optional.of(bob.getPinCode())).when(accountRepository).findPinCodeByName(bob.getName());
+        lenient().doReturn(Optional.of(dart.getPinCode())).when(accountRepository).findPinCodeByName(dart.getName());
     }
 
     @Test
@@ -77,16 +107,28 @@ class AccountServiceImplTest {
         assertEquals(emptyList, responseEntity.stream().toList());
     }
 
+    @Test
+    void whenGetAccountsWithUnchangedLedgerVersion_ThenRepositoryReadOnce() {
+        doReturn(accountList).when(this.accountRepository).findAll();
+        doReturn(5L).when(this.ledgerVersion).current();
+
+        var first = this.accountService.getAccounts();
+        var second = this.accountService.getAccounts();
+
+        assertSame(first, second);
+        verify(accountRepository, times(1)).findAll();
+    }
+
     @Test
     void whenTransfer_SuccessfulAndSenderResponseEntityCorrect() {
         double sumToTransfer = 30.0D;
         double sumOnDepositAfterTransfer = bob.getBalance() - sumToTransfer;
         doReturn(Optional.of(bob))
                 .when(this.accountRepository)
-                .findAccountByName(bob.getName());
+                .findAccountByNameForUpdate(bob.getName());
         doReturn(Optional.of(dart))
                 .when(this.accountRepository)
-                .findAccountByName(dart.getName());
+                .findAccountByNameForUpdate(dart.getName());
         doReturn(AccountDTO.builder()
                     .name(bob.getName())
                     .balance(sumOnDepositAfterTransfer)
@@ -112,10 +154,10 @@ class AccountServiceImplTest {
         double sumOnDepositAfterTransfer = dart.getBalance() + sumToTransfer;
         doReturn(Optional.of(bob))
                 .when(this.accountRepository)
-                .findAccountByName(bob.getName());
+                .findAccountByNameForUpdate(bob.getName());
         doReturn(Optional.of(dart))
                 .when(this.accountRepository)
-                .findAccountByName(dart.getName());
+                .findAccountByNameForUpdate(dart.getName());
         doReturn(AccountDTO.builder()
                     .name(bob.getName())
                     .balance(sumOnDepositAfterTransfer)
@@ -135,13 +177,117 @@ class AccountServiceImplTest {
         assertEquals(sumOnDepositAfterTransfer, responseEntity.getBalance());
     }
 
+    @Test
+    void whenTransfer_ThenChangesOfBothAccountsPublished() {
+        double sumToTransfer = 30.0D;
+        doReturn(Optional.of(bob))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(bob.getName());
+        doReturn(Optional.of(dart))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(dart.getName());
+
+        this.accountService.transfer(
+                bob.getName(),
+                dart.getName(),
+                bob.getPinCode(),
+                sumToTransfer
+        );
+
+        verify(eventPublisher).publishEvent(new AccountChangedEvent(
+                bob.getName(), 70.0D, -sumToTransfer, AccountChangedEvent.ChangeType.TRANSFER_OUT, 0L));
+        verify(eventPublisher).publishEvent(new AccountChangedEvent(
+                dart.getName(), 230.0D, sumToTransfer, AccountChangedEvent.ChangeType.TRANSFER_IN, 0L));
+    }
+
+    @Test
+    void whenTransfer_ThenAccountsLockedInNameOrder() {
+        doReturn(Optional.of(bob))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(bob.getName());
+        doReturn(Optional.of(dart))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(dart.getName());
+
+        this.accountService.transfer(
+                dart.getName(),
+                bob.getName(),
+                dart.getPinCode(),
+                30.0D
+        );
+
+        InOrder locks = inOrder(accountRepository, pinCodeVerifier, changeSequence);
+        locks.verify(accountRepository).findPinCodeByName(dart.getName());
+        locks.verify(pinCodeVerifier).matches(dart.getName(), dart.getPinCode(), dart.getPinCode());
+        locks.verify(accountRepository).findAccountByNameForUpdate(bob.getName());
+        locks.verify(accountRepository).findAccountByNameForUpdate(dart.getName());
+        locks.verify(changeSequence, times(2)).next();
+        verify(accountRepository, never()).findAccountByName(any());
+        assertEquals(130.0D, bob.getBalance());
+        assertEquals(170.0D, dart.getBalance());
+    }
+
+    @Test
+    void whenTransferWithWrongPinCode_ThenNoAccountIsLocked() {
+        doReturn(false).when(this.pinCodeVerifier).matches(bob.getName(), bob.getPinCode(), "0000");
+
+        assertThrows(BadRequestException.class, () -> this.accountService.transfer(
+                bob.getName(),
+                dart.getName(),
+                "0000",
+                30.0D
+        ));
+
+        verify(accountRepository, never()).findAccountByNameForUpdate(any());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void whenTransferExceedsVelocityLimit_ThenBalancesUnchanged() {
+        doReturn(Optional.of(bob))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(bob.getName());
+        doReturn(Optional.of(dart))
+                .when(this.accountRepository)
+                .findAccountByNameForUpdate(dart.getName());
+        doThrow(new TooManyRequestsException("limit"))
+                .when(this.velocityGuard)
+                .checkAndRecord(bob.getName(), 30.0D);
+
+        assertThrows(TooManyRequestsException.class, () -> this.accountService.transfer(
+                bob.getName(),
+                dart.getName(),
+                bob.getPinCode(),
+                30.0D
+        ));
+
+        assertEquals(100.0D, bob.getBalance());
+        assertEquals(200.0D, dart.getBalance());
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+
+    @Test
+    void whenMakeDepositWithWrongPinCode_ThenBadRequestAndBalanceUnchanged() {
+        doReturn(false).when(this.pinCodeVerifier).matches(bob.getName(), bob.getPinCode(), "0000");
+
+        assertThrows(BadRequestException.class, () -> this.accountService.makeDeposit(
+                bob.getName(),
+                "0000",
+                30.0D
+        ));
+
+        assertEquals(100.0D, bob.getBalance());
+        verify(accountRepository, never()).findAccountByNameForUpdate(any());
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+
     @Test
     void whenMakeDeposit_ThenSuccessfulAndResponseEntityCorrect() {
         double sumToDeposit = 30.0D;
         double sumOnDepositAfterDeposit = bob.getBalance() + sumToDeposit;
         doReturn(Optional.of(bob))
                 .when(this.accountRepository)
-                .findAccountByName(bob.getName());
+                .findAccountByNameForUpdate(bob.getName());
         doReturn(AccountDTO.builder()
                 .name(bob.getName())
                 .balance(sumOnDepositAfterDeposit)
@@ -166,7 +312,7 @@ class AccountServiceImplTest {
         double sumOnDepositAfterDeposit = bob.getBalance() - sumToWithdrawDeposit;
         doReturn(Optional.of(bob))
                 .when(this.accountRepository)
-                .findAccountByName(bob.getName());
+                .findAccountByNameForUpdate(bob.getName());
         doReturn(AccountDTO.builder()
                 .name(bob.getName())
                 .balance(sumOnDepositAfterDeposit)
@@ -200,4 +346,18 @@ class AccountServiceImplTest {
         assertEquals(bob.getName(), responseEntity.get().getName());
         assertEquals(bob.getBalance(), responseEntity.get().getBalance());
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenCreateAccount_ThenOnlyPinCodeHashIsStored() {
+        doReturn("pbkdf2$1$c2FsdA==$aGFzaA==").when(this.pinCodeVerifier).encode("1234");
+        doReturn(bob)
+                .when(this.accountRepository)
+                .save(ArgumentMatchers.any(Account.class));
+
+        this.accountService.createAccount(bob.getName(), "1234");
+
+        ArgumentCaptor<Account> saved = ArgumentCaptor.forClass(Account.class);
+        verify(accountRepository).save(saved.capture());
+        assertEquals("pbkdf2$1$c2FsdA==$aGFzaA==", saved.getValue().getPinCode());
+    }
+}
@@ -0,0 +1,95 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.ColdAccountStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccountTieringTest {
+
+    @Mock
+    AccountRepository accountRepository;
+
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    ColdAccountStore coldAccountStore;
+
+    AccountTiering accountTiering;
+
+    Instant cutoff = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    public void initTiering() throws Exception {
+        coldAccountStore = new ColdAccountStore(directory.toString(), 100L, new SimpleMeterRegistry());
+        accountTiering = new AccountTiering(accountRepository, coldAccountStore, eventPublisher, transactionManager, 1000L, 2, 10);
+    }
+
+    @AfterEach
+    public void closeStore() {
+        coldAccountStore.close();
+    }
+
+    @Test
+    void whenAccountsAreIdle_ThenMovedBySegments() {
+        doReturn(List.of(account(1, "Bob Marley"), account(2, "Dart Vader")))
+                .doReturn(List.of(account(3, "Luke Skywalker")))
+                .when(accountRepository).findByLastActivityBeforeOrderByIdAsc(cutoff, PageRequest.of(0, 2));
+
+        int evicted = accountTiering.evictIdleAccounts(cutoff);
+
+        assertEquals(3, evicted);
+        verify(accountRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(accountRepository).deleteAllByIdInBatch(List.of(3L));
+        verify(eventPublisher).publishEvent(new AccountsEvictedEvent(List.of("Bob Marley", "Dart Vader")));
+        verify(eventPublisher).publishEvent(new AccountsEvictedEvent(List.of("Luke Skywalker")));
+        assertEquals(3, coldAccountStore.coldAccounts());
+        assertEquals(2, coldAccountStore.coldSegments());
+        assertEquals(3, accountTiering.getReport().getLastRunEvicted());
+    }
+
+    @Test
+    void whenNoAccountsAreIdle_ThenNothingIsWritten() {
+        doReturn(List.of()).when(accountRepository).findByLastActivityBeforeOrderByIdAsc(cutoff, PageRequest.of(0, 2));
+
+        assertEquals(0, accountTiering.evictIdleAccounts(cutoff));
+
+        verify(accountRepository, never()).deleteAllByIdInBatch(any());
+        assertEquals(0, coldAccountStore.coldSegments());
+    }
+
+    static Account account(long id, String name) {
+        return Account.builder()
+                .id(id)
+                .name(name)
+                .pinCode("pbkdf2$1$c2FsdA==$aGFzaA==")
+                .balance(10.0D)
+                .lastActivity(Instant.EPOCH)
+                .build();
+    }
+}
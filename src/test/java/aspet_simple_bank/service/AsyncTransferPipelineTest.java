@@ -0,0 +1,193 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.dto.TransferTicketDTO;
+import aspet_simple_bank.store.AccountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncTransferPipelineTest {
+
+    @Mock
+    AccountRepository accountRepository;
+
+    @Mock
+    PinCodeVerifier pinCodeVerifier;
+
+    @Mock
+    VelocityGuard velocityGuard;
+
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    ChangeSequence changeSequence;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    AsyncTransferPipeline pipeline;
+
+    Account bob = Account.builder()
+            .id(1)
+            .name("Bob Marley")
+            .pinCode("1234")
+            .balance(100)
+            .build();
+
+    Account dart = Account.builder()
+            .id(2)
+            .name("Dart Vader")
+            .pinCode("1234")
+            .balance(200)
+            .build();
+
+    @BeforeEach
+    public void initPipeline() {
+        lenient().doReturn(Optional.of(bob)).when(accountRepository).findAccountByName(bob.getName());
+        lenient().doReturn(Optional.of(dart)).when(accountRepository).findAccountByName(dart.getName());
+        lenient().doReturn(Optional.of(bob)).when(accountRepository).findAccountByNameForUpdate(bob.getName());
+        lenient().doReturn(Optional.of(dart)).when(accountRepository).findAccountByNameForUpdate(dart.getName());
+        lenient().doReturn(true).when(pinCodeVerifier).matches(any(Account.class), anyString());
+        pipeline = new AsyncTransferPipeline(accountRepository, pinCodeVerifier, velocityGuard, eventPublisher,
+                changeSequence, transactionManager, new SimpleMeterRegistry(), 2, 16, 8, 100);
+        pipeline.start();
+    }
+
+    @AfterEach
+    public void stopPipeline() {
+        pipeline.stop();
+    }
+
+    @Test
+    void whenTransferSubmitted_ThenAppliedByWriterAndTicketCompleted() throws Exception {
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 30.0D);
+
+        assertEquals(TransferTicketDTO.Status.QUEUED, ticket.getStatus());
+        var result = pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(TransferTicketDTO.Status.COMPLETED, result.getStatus());
+        assertEquals(TransferTicketDTO.Status.COMPLETED, pipeline.getStatus(ticket.getTicket()).getStatus());
+        assertEquals(70.0D, bob.getBalance());
+        assertEquals(230.0D, dart.getBalance());
+        verify(eventPublisher, times(2)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void whenBalanceIsNotEnough_ThenTicketRejected() throws Exception {
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 300.0D);
+
+        var result = pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS);
+
+        assertEquals(TransferTicketDTO.Status.REJECTED_INSUFFICIENT_FUNDS, result.getStatus());
+        assertEquals(100.0D, bob.getBalance());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void whenPinCodeIsWrong_ThenNotQueued() {
+        doReturn(false).when(pinCodeVerifier).matches(bob, "0000");
+
+        assertThrows(BadRequestException.class,
+                () -> pipeline.submit(bob.getName(), dart.getName(), "0000", 30.0D));
+        assertEquals(0, pipeline.queueDepth());
+    }
+
+    @Test
+    void whenQueueIsFull_ThenSubmissionRejected() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writerBlocked.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(transactionManager).getTransaction(any());
+
+        pipeline.submit(bob.getName(), dart.getName(), "1234", 1.0D);
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 1.0D);
+
+        assertThrows(TooManyRequestsException.class,
+                () -> pipeline.submit(bob.getName(), dart.getName(), "1234", 1.0D));
+        assertEquals(2, pipeline.queueDepth());
+
+        writerBlocked.countDown();
+        var result = pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS);
+        assertEquals(TransferTicketDTO.Status.COMPLETED, result.getStatus());
+    }
+
+    @Test
+    void whenTicketWasNeverIssued_ThenUnknown() {
+        assertEquals(TransferTicketDTO.Status.UNKNOWN, pipeline.getStatus("42").getStatus());
+    }
+
+    @Test
+    void whenTicketRandomPartIsGuessed_ThenUnknown() throws Exception {
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 30.0D);
+        pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS);
+
+        UUID issued = UUID.fromString(ticket.getTicket());
+        String forged = new UUID(issued.getMostSignificantBits(), issued.getLeastSignificantBits() + 1).toString();
+
+        assertEquals(TransferTicketDTO.Status.UNKNOWN, pipeline.getStatus(forged).getStatus());
+        assertEquals(TransferTicketDTO.Status.UNKNOWN,
+                pipeline.awaitStatus(forged).get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void whenOneTransferOfBatchFails_ThenOthersAreApplied() throws Exception {
+        doThrow(new IllegalStateException("connection lost")).when(accountRepository).findAccountByNameForUpdate("Broken");
+
+        var broken = pipeline.submit(bob.getName(), "Broken", "1234", 10.0D);
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 30.0D);
+
+        assertEquals(TransferTicketDTO.Status.FAILED,
+                pipeline.awaitStatus(broken.getTicket()).get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferTicketDTO.Status.COMPLETED,
+                pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(70.0D, bob.getBalance());
+        assertEquals(230.0D, dart.getBalance());
+    }
+
+    @Test
+    void whenWriterHitsError_ThenBatchFailedAndWriterKeepsRunning() throws Exception {
+        doThrow(new OutOfMemoryError("batch")).doReturn(List.of())
+                .when(accountRepository).saveAll(anyIterable());
+
+        var failed = pipeline.submit(bob.getName(), dart.getName(), "1234", 30.0D);
+        assertEquals(TransferTicketDTO.Status.FAILED,
+                pipeline.awaitStatus(failed.getTicket()).get(5, TimeUnit.SECONDS).getStatus());
+
+        var ticket = pipeline.submit(bob.getName(), dart.getName(), "1234", 30.0D);
+        assertEquals(TransferTicketDTO.Status.COMPLETED,
+                pipeline.awaitStatus(ticket.getTicket()).get(5, TimeUnit.SECONDS).getStatus());
+        assertTrue(awaitEmptyQueue(5));
+    }
+
+    /**
+     * Статус публикуется раньше, чем писатель сдвигает счетчик обработанных заявок
+     */
+    private boolean awaitEmptyQueue(long seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (pipeline.queueDepth() != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return pipeline.queueDepth() == 0;
+    }
+}
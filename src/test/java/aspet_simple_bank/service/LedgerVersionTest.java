@@ -0,0 +1,33 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerVersionTest {
+
+    LedgerVersion ledgerVersion = new LedgerVersion();
+
+    @Test
+    void whenAccountIsEvictedAndChangedAgain_ThenEtagIsNotReused() {
+        ledgerVersion.onAccountChanged(change("Bob Marley"));
+        ledgerVersion.onAccountChanged(change("Dart Vader"));
+        String before = ledgerVersion.accountEtag("Bob Marley");
+
+        ledgerVersion.onAccountsEvicted(new AccountsEvictedEvent(List.of("Bob Marley")));
+        assertEquals(-1, ledgerVersion.accountVersion("Bob Marley"));
+        assertNull(ledgerVersion.accountEtag("Bob Marley"));
+
+        ledgerVersion.onAccountChanged(change("Bob Marley"));
+        assertNotEquals(before, ledgerVersion.accountEtag("Bob Marley"));
+        assertTrue(ledgerVersion.accountVersion("Bob Marley") > 1);
+    }
+
+    private static AccountChangedEvent change(String name) {
+        return new AccountChangedEvent(name, 1.0D, 1.0D, AccountChangedEvent.ChangeType.DEPOSIT, 1L);
+    }
+}
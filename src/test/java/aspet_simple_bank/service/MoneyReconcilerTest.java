@@ -0,0 +1,147 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.dto.AccountDriftDTO;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.event.AccountsEvictedEvent;
+import aspet_simple_bank.store.AccountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MoneyReconcilerTest {
+
+    @Mock
+    AccountRepository accountRepository;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MoneyReconciler moneyReconciler;
+
+    @BeforeEach
+    public void initReconciler() {
+        moneyReconciler = new MoneyReconciler(accountRepository, transactionManager, meterRegistry, 500, 0);
+        moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                "Bob Marley", 0.0D, 0.0D, AccountChangedEvent.ChangeType.CREATED, 0L));
+        moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                "Dart Vader", 0.0D, 0.0D, AccountChangedEvent.ChangeType.CREATED, 0L));
+        moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                "Bob Marley", 100.0D, 100.0D, AccountChangedEvent.ChangeType.DEPOSIT, 0L));
+        moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                "Bob Marley", 70.0D, -30.0D, AccountChangedEvent.ChangeType.TRANSFER_OUT, 0L));
+        moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                "Dart Vader", 30.0D, 30.0D, AccountChangedEvent.ChangeType.TRANSFER_IN, 0L));
+    }
+
+    @Test
+    void whenLedgerMatchesMovements_ThenNoDrift() {
+        doReturn(List.of(account(1, "Bob Marley", 70.0D), account(2, "Dart Vader", 30.0D)))
+                .when(this.accountRepository)
+                .findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 500));
+
+        moneyReconciler.reconcile();
+
+        var report = moneyReconciler.getLastReport();
+        assertEquals(1, report.getRuns());
+        assertEquals(2, report.getAccountsScanned());
+        assertEquals(100.0D, report.getExpectedTotal());
+        assertEquals(100.0D, report.getLedgerTotal());
+        assertTrue(report.getDriftAccounts().isEmpty());
+        verify(accountRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void whenTransferCreditIsLost_ThenDriftReportedForRecipient() {
+        doReturn(List.of(account(1, "Bob Marley", 70.0D), account(2, "Dart Vader", 0.0D)))
+                .when(this.accountRepository)
+                .findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 500));
+        doReturn(Optional.of(account(2, "Dart Vader", 0.0D)))
+                .when(this.accountRepository)
+                .findById(2L);
+
+        moneyReconciler.reconcile();
+
+        var report = moneyReconciler.getLastReport();
+        assertEquals(-30.0D, report.getDrift());
+        assertEquals(List.of(new AccountDriftDTO("Dart Vader", 30.0D, 0.0D)), report.getDriftAccounts());
+        assertEquals(-30.0D, meterRegistry.get("bank.reconciliation.drift").gauge().value());
+    }
+
+    @Test
+    void whenCreationRolledBack_ThenAccountIsNotTracked() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                    "Warmup", 0.0D, 0.0D, AccountChangedEvent.ChangeType.CREATED, 0L));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(2, moneyReconciler.trackedAccounts());
+    }
+
+    @Test
+    void whenAccountsEvicted_ThenNoLongerTracked() {
+        moneyReconciler.onAccountsEvicted(new AccountsEvictedEvent(List.of("Bob Marley")));
+
+        assertEquals(1, moneyReconciler.trackedAccounts());
+    }
+
+    @Test
+    void whenScanRunsBetweenCommitAndAfterCompletion_ThenUntrackedAccountIsNotCountedTwice() {
+        moneyReconciler.onAccountsEvicted(new AccountsEvictedEvent(List.of("Bob Marley")));
+        doReturn(List.of(account(1, "Bob Marley", 100.0D), account(2, "Dart Vader", 30.0D)))
+                .when(this.accountRepository)
+                .findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 500));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            moneyReconciler.onAccountChanged(new AccountChangedEvent(
+                    "Bob Marley", 100.0D, 30.0D, AccountChangedEvent.ChangeType.DEPOSIT, 0L));
+            moneyReconciler.reconcile();
+            assertEquals(1, moneyReconciler.getLastReport().getAccountsSkipped());
+            assertEquals(1, moneyReconciler.trackedAccounts());
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        moneyReconciler.reconcile();
+
+        var report = moneyReconciler.getLastReport();
+        assertEquals(2, report.getAccountsScanned());
+        assertEquals(130.0D, report.getExpectedTotal());
+        assertTrue(report.getDriftAccounts().isEmpty());
+    }
+
+    private static Account account(long id, String name, double balance) {
+        return Account.builder()
+                .id(id)
+                .name(name)
+                .pinCode("1234")
+                .balance(balance)
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package aspet_simple_bank.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PinCodeVerifierTest {
+
+    static final long NOW = 1_700_000_000_000L;
+
+    PinCodeEncoder pinCodeEncoder = new PinCodeEncoder(1_000);
+
+    PinCodeVerifier pinCodeVerifier = new PinCodeVerifier(pinCodeEncoder, 60_000L, 2);
+
+    @Test
+    void whenEncode_ThenSaltedHashMatchesOnlyOriginalPinCode() {
+        String first = pinCodeEncoder.encode("1234");
+        String second = pinCodeEncoder.encode("1234");
+
+        assertNotEquals(first, second);
+        assertFalse(first.contains("1234"));
+        assertTrue(pinCodeEncoder.matches("1234", first));
+        assertTrue(pinCodeEncoder.matches("1234", second));
+        assertFalse(pinCodeEncoder.matches("4321", first));
+    }
+
+    @Test
+    void whenStoredValueMalformed_ThenDoesNotMatch() {
+        assertFalse(pinCodeEncoder.matches("1234", "1234"));
+        assertFalse(pinCodeEncoder.matches("1234", "pbkdf2$x$c2FsdA==$aGFzaA=="));
+        assertFalse(pinCodeEncoder.matches("1234", null));
+    }
+
+    @Test
+    void whenPinCodeVerified_ThenCachedUntilTtlExpires() {
+        String encoded = pinCodeEncoder.encode("1234");
+
+        assertTrue(pinCodeVerifier.matches("Bob Marley", encoded, "1234", NOW));
+        assertEquals(1, pinCodeVerifier.cachedCredentials());
+        assertTrue(pinCodeVerifier.matches("Bob Marley", encoded, "1234", NOW + 59_000L));
+        assertTrue(pinCodeVerifier.matches("Bob Marley", encoded, "1234", NOW + 61_000L));
+    }
+
+    @Test
+    void whenWrongPinCodeAfterCachedOne_ThenRejected() {
+        String encoded = pinCodeEncoder.encode("1234");
+
+        assertTrue(pinCodeVerifier.matches("Bob Marley", encoded, "1234", NOW));
+        assertFalse(pinCodeVerifier.matches("Bob Marley", encoded, "0000", NOW));
+        assertFalse(pinCodeVerifier.matches("Bob Marley", pinCodeEncoder.encode("5678"), "1234", NOW));
+    }
+
+    @Test
+    void whenMoreAccountsThanCacheSize_ThenEldestEvicted() {
+        String encoded = pinCodeEncoder.encode("1234");
+
+        pinCodeVerifier.matches("Bob Marley", encoded, "1234", NOW);
+        pinCodeVerifier.matches("Dart Vader", encoded, "1234", NOW);
+        pinCodeVerifier.matches("Oleg", encoded, "1234", NOW);
+
+        assertEquals(2, pinCodeVerifier.cachedCredentials());
+    }
+}
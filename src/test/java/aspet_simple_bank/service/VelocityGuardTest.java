@@ -0,0 +1,125 @@
+package aspet_simple_bank.service;
+
+import aspet_simple_bank.exceptions.TooManyRequestsException;
+import aspet_simple_bank.model.client.dto.VelocityLimitsDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VelocityGuardTest {
+
+    static final long NOW = 1_700_000_000_000L;
+
+    VelocityGuard velocityGuard = new VelocityGuard(3, 100.0D);
+
+    @Test
+    void whenTransfersPerMinuteExceeded_ThenRejectedUntilWindowSlides() {
+        velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW);
+        velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW + 10_000L);
+        velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW + 20_000L);
+
+        assertThrows(TooManyRequestsException.class,
+                () -> velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW + 30_000L));
+
+        velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW + 61_000L);
+    }
+
+    @Test
+    void whenAmountPerHourExceeded_ThenRejectedAndNotRecorded() {
+        velocityGuard.checkAndRecord("Bob Marley", 60.0D, NOW);
+
+        assertThrows(TooManyRequestsException.class,
+                () -> velocityGuard.checkAndRecord("Bob Marley", 50.0D, NOW + 120_000L));
+
+        velocityGuard.checkAndRecord("Bob Marley", 40.0D, NOW + 120_000L);
+        velocityGuard.checkAndRecord("Bob Marley", 60.0D, NOW + 3_601_000L);
+    }
+
+    @Test
+    void whenAccountsDiffer_ThenWindowsAreIndependent() {
+        velocityGuard.checkAndRecord("Bob Marley", 100.0D, NOW);
+
+        velocityGuard.checkAndRecord("Dart Vader", 100.0D, NOW);
+    }
+
+    @Test
+    void whenLimitsUpdated_ThenAppliedToRecordedHistory() {
+        velocityGuard.checkAndRecord("Bob Marley", 10.0D, NOW);
+        velocityGuard.checkAndRecord("Bob Marley", 10.0D, NOW);
+
+        velocityGuard.updateLimits(new VelocityLimitsDTO(2, 0.0D));
+
+        assertThrows(TooManyRequestsException.class,
+                () -> velocityGuard.checkAndRecord("Bob Marley", 1.0D, NOW));
+        assertEquals(new VelocityLimitsDTO(2, 0.0D), velocityGuard.getLimits());
+    }
+
+    @Test
+    void whenNegativeLimits_ThenIllegalArgument() {
+        assertThrows(IllegalArgumentException.class,
+                () -> velocityGuard.updateLimits(new VelocityLimitsDTO(-1, 0.0D)));
+    }
+
+    @Test
+    void whenWindowIdleForAnHour_ThenEvicted() {
+        velocityGuard.checkAndRecord("Bob Marley", 10.0D, NOW);
+        velocityGuard.checkAndRecord("Dart Vader", 10.0D, NOW + 3_000_000L);
+
+        velocityGuard.evictIdleWindows(NOW + 3_600_000L);
+
+        assertEquals(1, velocityGuard.trackedAccounts());
+    }
+
+    @Test
+    void whenWindowEvictedBeforeRecord_ThenNewWindowIsUsed() {
+        velocityGuard.checkAndRecord("Bob Marley", 60.0D, NOW);
+        velocityGuard.evictIdleWindows(NOW + 3_600_000L);
+
+        velocityGuard.checkAndRecord("Bob Marley", 60.0D, NOW + 3_600_000L);
+
+        assertEquals(1, velocityGuard.trackedAccounts());
+    }
+
+    @Test
+    void whenTransactionRolledBack_ThenReservationIsReleasedAndNotRecorded() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            velocityGuard.checkAndRecord("Bob Marley", 60.0D);
+
+            assertThrows(TooManyRequestsException.class,
+                    () -> velocityGuard.checkAndRecord("Bob Marley", 50.0D));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        velocityGuard.checkAndRecord("Bob Marley", 100.0D);
+    }
+
+    @Test
+    void whenSeveralChecksInOneTransaction_ThenOneSynchronizationSettlesAll() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            velocityGuard.checkAndRecord("Bob Marley", 30.0D);
+            velocityGuard.checkAndRecord("Bob Marley", 30.0D);
+            velocityGuard.checkAndRecord("Dart Vader", 30.0D);
+
+            assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(
+                            TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNull(TransactionSynchronizationManager.getResource(velocityGuard));
+        assertThrows(TooManyRequestsException.class,
+                () -> velocityGuard.checkAndRecord("Bob Marley", 41.0D));
+        velocityGuard.checkAndRecord("Dart Vader", 70.0D);
+    }
+}
@@ -0,0 +1,215 @@
+package aspet_simple_bank.sharding;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.exceptions.ShardUnavailableException;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.model.client.domain_model.TransferIntent;
+import aspet_simple_bank.model.client.event.AccountChangedEvent;
+import aspet_simple_bank.model.client.factory.AccountDTOFactory;
+import aspet_simple_bank.service.ChangeSequence;
+import aspet_simple_bank.service.PinCodeVerifier;
+import aspet_simple_bank.service.VelocityGuard;
+import aspet_simple_bank.store.AccountRepository;
+import aspet_simple_bank.store.TransferIntentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CrossShardTransferServiceTest {
+
+    static final String REMOTE = "http://localhost:8082";
+
+    @Mock
+    AccountRepository accountRepository;
+
+    @Mock
+    TransferIntentRepository transferIntentRepository;
+
+    @Mock
+    AccountDTOFactory accountDTOFactory;
+
+    @Mock
+    PinCodeVerifier pinCodeVerifier;
+
+    @Mock
+    VelocityGuard velocityGuard;
+
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    ShardRing shardRing;
+
+    @Mock
+    ShardClient shardClient;
+
+    @Mock
+    ChangeSequence changeSequence;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    CrossShardTransferService crossShardTransferService;
+
+    /**
+     * Журнал переводов в памяти вместо таблицы transfer_intent
+     */
+    Map<String, TransferIntent> intents = new HashMap<>();
+
+    Account bob = Account.builder()
+            .id(1)
+            .name("Bob Marley")
+            .pinCode("1234")
+            .balance(100)
+            .build();
+
+    Account dart = Account.builder()
+            .id(2)
+            .name("Dart Vader")
+            .pinCode("1234")
+            .balance(200)
+            .build();
+
+    @BeforeEach
+    public void initService() {
+        lenient().doReturn(Optional.of(bob)).when(accountRepository).findAccountByName(bob.getName());
+        lenient().doReturn(Optional.of(dart)).when(accountRepository).findAccountByName(dart.getName());
+        lenient().doReturn(Optional.of(bob)).when(accountRepository).findAccountByNameForUpdate(bob.getName());
+        lenient().doReturn(Optional.of(dart)).when(accountRepository).findAccountByNameForUpdate(dart.getName());
+        lenient().doReturn(Optional.of(bob.getPinCode())).when(accountRepository).findPinCodeByName(bob.getName());
+        lenient().doReturn(true).when(pinCodeVerifier).matches(anyString(), anyString(), anyString());
+        lenient().doReturn(REMOTE).when(shardRing).ownerOf(dart.getName());
+        lenient().doAnswer(invocation -> {
+            TransferIntent intent = invocation.getArgument(0);
+            intents.put(intent.getId(), intent);
+            return intent;
+        }).when(transferIntentRepository).save(any(TransferIntent.class));
+        lenient().doAnswer(invocation -> Optional.ofNullable(intents.get(invocation.<String>getArgument(0))))
+                .when(transferIntentRepository).findById(anyString());
+        lenient().doAnswer(invocation -> {
+            TransferIntent intent = intents.get(invocation.<String>getArgument(0));
+            if (intent == null || intent.getState() != invocation.getArgument(1)) {
+                return 0;
+            }
+            intent.setState(invocation.getArgument(2));
+            intent.setUpdatedAt(invocation.getArgument(3));
+            return 1;
+        }).when(transferIntentRepository).transition(anyString(), any(), any(), any(Instant.class));
+        crossShardTransferService = new CrossShardTransferService(accountRepository, transferIntentRepository,
+                accountDTOFactory, pinCodeVerifier, velocityGuard, eventPublisher, changeSequence, shardRing, shardClient,
+                transactionManager, 10_000L);
+    }
+
+    @Test
+    void whenParticipantPreparesAndCommits_ThenSourceIsDebitedAndIntentCommitted() {
+        doReturn(ShardClient.Outcome.OK).when(shardClient).call(eq(REMOTE), anyString(), anyMap());
+
+        crossShardTransferService.transfer(bob.getName(), dart.getName(), "1234", 30.0D);
+
+        assertEquals(70.0D, bob.getBalance());
+        TransferIntent intent = intents.values().iterator().next();
+        assertEquals(TransferIntent.Role.SOURCE, intent.getRole());
+        assertEquals(TransferIntent.State.COMMITTED, intent.getState());
+        verify(shardClient).call(eq(REMOTE), endsWith("/prepare"), anyMap());
+        verify(shardClient).call(eq(REMOTE), endsWith("/commit"), anyMap());
+        verify(velocityGuard).checkAndRecord(bob.getName(), 30.0D);
+    }
+
+    @Test
+    void whenParticipantRejectsPrepare_ThenSourceIsRefunded() {
+        doReturn(ShardClient.Outcome.REJECTED).when(shardClient).call(eq(REMOTE), endsWith("/prepare"), anyMap());
+        doReturn(ShardClient.Outcome.OK).when(shardClient).call(eq(REMOTE), endsWith("/abort"), anyMap());
+
+        assertThrows(BadRequestException.class,
+                () -> crossShardTransferService.transfer(bob.getName(), dart.getName(), "1234", 30.0D));
+
+        assertEquals(100.0D, bob.getBalance());
+        assertEquals(TransferIntent.State.ABORTED, intents.values().iterator().next().getState());
+        verify(eventPublisher).publishEvent(new AccountChangedEvent(bob.getName(), 100.0D, 30.0D,
+                AccountChangedEvent.ChangeType.TRANSFER_REFUND, 0L));
+    }
+
+    @Test
+    void whenParticipantIsUnavailable_ThenTransferIsCancelled() {
+        doReturn(ShardClient.Outcome.UNAVAILABLE).when(shardClient).call(eq(REMOTE), anyString(), anyMap());
+
+        assertThrows(ShardUnavailableException.class,
+                () -> crossShardTransferService.transfer(bob.getName(), dart.getName(), "1234", 30.0D));
+
+        assertEquals(100.0D, bob.getBalance());
+        verify(shardClient, never()).call(eq(REMOTE), endsWith("/commit"), anyMap());
+    }
+
+    @Test
+    void whenPinCodeIsWrong_ThenSourceIsNotLockedAndNothingIsReserved() {
+        doReturn(false).when(pinCodeVerifier).matches(bob.getName(), bob.getPinCode(), "0000");
+
+        assertThrows(BadRequestException.class,
+                () -> crossShardTransferService.transfer(bob.getName(), dart.getName(), "0000", 30.0D));
+
+        assertEquals(100.0D, bob.getBalance());
+        assertTrue(intents.isEmpty());
+        verify(accountRepository, never()).findAccountByNameForUpdate(anyString());
+        verifyNoInteractions(shardClient);
+    }
+
+    @Test
+    void whenCommitIsRepeated_ThenTargetIsCreditedOnce() {
+        crossShardTransferService.prepare("tx-1", bob.getName(), dart.getName(), 30.0D);
+
+        crossShardTransferService.commit("tx-1");
+        crossShardTransferService.commit("tx-1");
+
+        assertEquals(230.0D, dart.getBalance());
+        assertEquals(TransferIntent.State.COMMITTED, intents.get("tx-1").getState());
+    }
+
+    @Test
+    void whenAbortArrivesBeforePrepare_ThenLatePrepareIsRejected() {
+        crossShardTransferService.abort("tx-1");
+
+        assertThrows(BadRequestException.class,
+                () -> crossShardTransferService.prepare("tx-1", bob.getName(), dart.getName(), 30.0D));
+        assertThrows(BadRequestException.class, () -> crossShardTransferService.commit("tx-1"));
+        assertEquals(200.0D, dart.getBalance());
+    }
+
+    @Test
+    void whenCoordinatorStalledAfterDecision_ThenRecoveryRetriesCommit() {
+        doReturn(true).when(shardRing).isEnabled();
+        doReturn(ShardClient.Outcome.OK).when(shardClient).call(eq(REMOTE), endsWith("/commit"), anyMap());
+        TransferIntent stalled = TransferIntent.builder()
+                .id("tx-1")
+                .role(TransferIntent.Role.SOURCE)
+                .state(TransferIntent.State.COMMITTING)
+                .nameFrom(bob.getName())
+                .nameTo(dart.getName())
+                .amount(30.0D)
+                .updatedAt(Instant.EPOCH)
+                .build();
+        intents.put(stalled.getId(), stalled);
+        doReturn(List.of()).when(transferIntentRepository).findByRoleAndStateAndUpdatedAtBefore(
+                eq(TransferIntent.Role.SOURCE), eq(TransferIntent.State.RESERVED), any(Instant.class));
+        doReturn(List.of(stalled)).when(transferIntentRepository).findByRoleAndStateAndUpdatedAtBefore(
+                eq(TransferIntent.Role.SOURCE), eq(TransferIntent.State.COMMITTING), any(Instant.class));
+
+        crossShardTransferService.recoverInDoubtTransfers();
+
+        assertEquals(TransferIntent.State.COMMITTED, stalled.getState());
+    }
+}
@@ -0,0 +1,142 @@
+package aspet_simple_bank.sharding;
+
+import aspet_simple_bank.Application;
+import aspet_simple_bank.model.client.domain_model.Account;
+import aspet_simple_bank.store.AccountRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Несколько экземпляров приложения на localhost, каждый со своей базой H2 в памяти.
+ * Настройки передаются аргументами командной строки, чтобы они перекрывали application.yaml.
+ * Используется интеграционными тестами и замером масштабирования шардов
+ */
+public class ShardCluster implements AutoCloseable {
+
+    static final String SECRET = "shard-cluster-secret";
+
+    private final List<String> nodes = new ArrayList<>();
+    private final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+    private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+    private ShardCluster() {
+    }
+
+    /**
+     * @param shards - количество экземпляров
+     * @param properties - дополнительные свойства для всех экземпляров в виде name=value
+     */
+    public static ShardCluster start(int shards, String... properties) {
+        ShardCluster cluster = new ShardCluster();
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            ports.add(freePort());
+            cluster.nodes.add("http://localhost:" + ports.get(i));
+        }
+        String nodes = shards > 1 ? String.join(",", cluster.nodes) : "";
+        try {
+            for (int i = 0; i < shards; i++) {
+                List<String> args = new ArrayList<>(List.of(
+                        "--server.port=" + ports.get(i),
+                        "--spring.datasource.url=jdbc:h2:mem:shard-" + ports.get(i) + ";LOCK_TIMEOUT=10000",
+                        "--bank.sharding.nodes=" + nodes,
+                        "--bank.sharding.self=" + (shards > 1 ? cluster.nodes.get(i) : ""),
+                        "--bank.sharding.secret=" + SECRET,
+                        "--bank.pin.hash-iterations=1000",
+                        "--springdoc.api-docs.enabled=false"));
+                for (String property : properties) {
+                    args.add("--" + property);
+                }
+                cluster.instances.add(new SpringApplicationBuilder(Application.class).run(args.toArray(String[]::new)));
+            }
+        } catch (RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    public String node(int shard) {
+        return nodes.get(shard);
+    }
+
+    public <T> T bean(int shard, Class<T> type) {
+        return instances.get(shard).getBean(type);
+    }
+
+    /**
+     * Останавливает экземпляр, остальные продолжают работать
+     */
+    public void stop(int shard) {
+        instances.get(shard).close();
+    }
+
+    /**
+     * Выполняет запрос к публичному API экземпляра, параметры передаются в строке запроса
+     */
+    public ResponseEntity<String> exchange(int shard, HttpMethod method, String path, Map<String, ?> parameters) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(node(shard)).path(path);
+        parameters.forEach((name, value) -> uri.queryParam(name, value));
+        return restTemplate.exchange(uri.build().encode().toUri(), method, null, String.class);
+    }
+
+    /**
+     * Выполняет запрос к публичному API экземпляра, параметры передаются телом формы
+     */
+    public ResponseEntity<String> exchangeForm(int shard, HttpMethod method, String path, Map<String, ?> parameters) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        parameters.forEach((name, value) -> form.add(name, String.valueOf(value)));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        return restTemplate.exchange(URI.create(node(shard) + path), method, new HttpEntity<>(form, headers),
+                String.class);
+    }
+
+    /**
+     * @return сумма балансов по всем работающим экземплярам
+     */
+    public double totalBalance() {
+        return instances.stream()
+                .filter(ConfigurableApplicationContext::isActive)
+                .flatMap(instance -> instance.getBean(AccountRepository.class)
+                        .findAll().stream())
+                .mapToDouble(Account::getBalance)
+                .sum();
+    }
+
+    @Override
+    public void close() {
+        instances.stream()
+                .filter(ConfigurableApplicationContext::isActive)
+                .forEach(ConfigurableApplicationContext::close);
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package aspet_simple_bank.sharding;
+
+import aspet_simple_bank.model.client.domain_model.TransferIntent;
+import aspet_simple_bank.store.TransferIntentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Три экземпляра приложения на localhost.
+ * Запуск: mvn -B test -Pintegration
+ */
+@Tag("integration")
+class ShardClusterIntegrationTest {
+
+    static final int SHARDS = 3;
+    static final int ACCOUNTS = 30;
+
+    ShardCluster cluster;
+
+    @BeforeEach
+    public void startCluster() {
+        cluster = ShardCluster.start(SHARDS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(HttpStatus.CREATED, cluster.exchange(0, HttpMethod.POST, "/api/create",
+                    Map.of("name", name(i), "pin_code", "1234")).getStatusCode());
+            assertEquals(HttpStatus.OK, cluster.exchange(i % SHARDS, HttpMethod.PATCH, "/api/makeDeposit",
+                    Map.of("name", name(i), "pin_code", "1234", "deposit", 100)).getStatusCode());
+        }
+    }
+
+    @AfterEach
+    public void stopCluster() {
+        cluster.close();
+    }
+
+    @Test
+    void whenAccountIsRequestedFromAnyShard_ThenOwnerAnswers() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                var response = cluster.exchange(shard, HttpMethod.GET, "/api/accounts/" + name(i), Map.of());
+                assertEquals(HttpStatus.OK, response.getStatusCode());
+                assertEquals(ring.ownerOf(name(i)), response.getHeaders().getFirst("X-Bank-Shard"));
+            }
+        }
+        assertEquals(ACCOUNTS * 100.0D, cluster.totalBalance(), 1e-6);
+    }
+
+    @Test
+    void whenTransfersCrossShards_ThenMoneyIsConserved() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+        int crossShard = 0;
+
+        for (int i = 0; i < ACCOUNTS * 3; i++) {
+            String from = name(i % ACCOUNTS);
+            String to = name((i * 7 + 1) % ACCOUNTS);
+            if (from.equals(to)) {
+                continue;
+            }
+            var response = cluster.exchange(i % SHARDS, HttpMethod.PATCH, "/api/transfer",
+                    Map.of("nameFrom", from, "nameTo", to, "pin_code", "1234", "remittance", 10));
+            assertEquals(HttpStatus.OK, response.getStatusCode(), response.getBody());
+            if (!ring.ownerOf(from).equals(ring.ownerOf(to))) {
+                crossShard++;
+            }
+        }
+
+        assertTrue(crossShard > 0);
+        assertEquals(ACCOUNTS * 100.0D, cluster.totalBalance(), 1e-6);
+        List<TransferIntent> coordinated = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            cluster.bean(shard, TransferIntentRepository.class).findAll().stream()
+                    .filter(intent -> intent.getRole() == TransferIntent.Role.SOURCE)
+                    .forEach(coordinated::add);
+        }
+        assertEquals(crossShard, coordinated.size());
+        coordinated.forEach(intent -> assertEquals(TransferIntent.State.COMMITTED, intent.getState()));
+    }
+
+    @Test
+    void whenTargetShardIsDown_ThenTransferIsRejectedAndRefunded() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+        String from = null;
+        String to = null;
+        for (int i = 0; i < ACCOUNTS && (from == null || to == null); i++) {
+            if (ring.ownerOf(name(i)).equals(cluster.node(0))) {
+                from = name(i);
+            } else if (ring.ownerOf(name(i)).equals(cluster.node(1))) {
+                to = name(i);
+            }
+        }
+        assertNotNull(from);
+        assertNotNull(to);
+        cluster.stop(1);
+
+        var response = cluster.exchange(0, HttpMethod.PATCH, "/api/transfer",
+                Map.of("nameFrom", from, "nameTo", to, "pin_code", "1234", "remittance", 10));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        var account = cluster.exchange(0, HttpMethod.GET, "/api/accounts/" + from, Map.of());
+        assertTrue(account.getBody().contains("\"balance\":100.0"), account.getBody());
+        assertTrue(cluster.bean(0, TransferIntentRepository.class).findAll().stream()
+                .allMatch(intent -> intent.getState() == TransferIntent.State.ABORTED));
+    }
+
+    @Test
+    void whenParticipantIsCalledWithoutSecret_ThenForbidden() {
+        var response = cluster.exchange(0, HttpMethod.POST, CrossShardTransferService.PARTICIPANT_PATH + "tx-1/prepare",
+                Map.of("nameFrom", name(0), "nameTo", name(1), "amount", 10));
+
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+        assertTrue(cluster.bean(0, TransferIntentRepository.class).findAll().isEmpty());
+    }
+
+    @Test
+    void whenFormBodyRequestIsForwarded_ThenOwnerReceivesParameters() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+        String name = "form-account";
+        int other = ring.ownerOf(name).equals(cluster.node(0)) ? 1 : 0;
+
+        assertEquals(HttpStatus.CREATED, cluster.exchangeForm(other, HttpMethod.POST, "/api/create",
+                Map.of("name", name, "pin_code", "1234")).getStatusCode());
+        var deposit = cluster.exchangeForm(other, HttpMethod.PATCH, "/api/makeDeposit",
+                Map.of("name", name, "pin_code", "1234", "deposit", 50));
+
+        assertEquals(HttpStatus.OK, deposit.getStatusCode(), deposit.getBody());
+        assertEquals(ring.ownerOf(name), deposit.getHeaders().getFirst("X-Bank-Shard"));
+        assertTrue(deposit.getBody().contains("\"balance\":50.0"), deposit.getBody());
+    }
+
+    @Test
+    void whenAccountsAreListedOrSearched_ThenEachShardReturnsOnlyItsOwnAccounts() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+        int listed = 0;
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            String accounts = cluster.exchange(shard, HttpMethod.GET, "/api/accounts", Map.of()).getBody();
+            String found = cluster.exchange(shard, HttpMethod.GET, "/api/accounts/search",
+                    Map.of("prefix", "account-", "limit", 100)).getBody();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                boolean owned = ring.ownerOf(name(i)).equals(cluster.node(shard));
+                assertEquals(owned, accounts.contains("\"name\":\"" + name(i) + "\""), accounts);
+                assertEquals(owned, found.contains("\"" + name(i) + "\""), found);
+                listed += owned ? 1 : 0;
+            }
+        }
+        assertEquals(ACCOUNTS, listed);
+    }
+
+    @Test
+    void whenTicketStatusIsRequestedFromAnotherShard_ThenAcceptingShardAnswers() {
+        ShardRing ring = cluster.bean(0, ShardRing.class);
+        String from = null;
+        String to = null;
+        for (int i = 0; i < ACCOUNTS && to == null; i++) {
+            if (!ring.ownerOf(name(i)).equals(cluster.node(1))) {
+                continue;
+            }
+            if (from == null) {
+                from = name(i);
+            } else {
+                to = name(i);
+            }
+        }
+        assertNotNull(to);
+
+        var submitted = cluster.exchange(0, HttpMethod.POST, "/api/transfers/async",
+                Map.of("nameFrom", from, "nameTo", to, "pin_code", "1234", "remittance", 10));
+        assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode(), submitted.getBody());
+        String ticket = submitted.getBody().replaceAll(".*\"ticket\":\"([^\"]+)\".*", "$1");
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            var status = cluster.exchange(shard, HttpMethod.GET, "/api/transfers/async/" + ticket,
+                    Map.of("waitMillis", 3000));
+            assertEquals(cluster.node(1), status.getHeaders().getFirst("X-Bank-Shard"));
+            assertTrue(status.getBody().contains("\"status\":\"COMPLETED\""), status.getBody());
+        }
+    }
+
+    static String name(int i) {
+        return "account-" + i;
+    }
+}
@@ -0,0 +1,75 @@
+package aspet_simple_bank.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+
+    static final String NODE_1 = "http://localhost:8081";
+    static final String NODE_2 = "http://localhost:8082";
+    static final String NODE_3 = "http://localhost:8083";
+
+    @Test
+    void whenNodesAreNotConfigured_ThenEveryAccountIsLocal() {
+        ShardRing ring = new ShardRing("", "", 128);
+
+        assertFalse(ring.isEnabled());
+        assertFalse(ring.isRemote("Bob Marley"));
+    }
+
+    @Test
+    void whenRingsAreBuiltOnDifferentInstances_ThenOwnersAreTheSame() {
+        ShardRing first = new ShardRing(NODE_1 + "," + NODE_2 + "," + NODE_3, NODE_1, 128);
+        ShardRing second = new ShardRing(NODE_3 + ", " + NODE_2 + ", " + NODE_1, NODE_3, 128);
+
+        for (int i = 0; i < 1000; i++) {
+            String name = "account-" + i;
+            assertEquals(first.ownerOf(name), second.ownerOf(name));
+            assertNotEquals(first.isRemote(name), first.ownerOf(name).equals(NODE_1));
+        }
+    }
+
+    @Test
+    void whenNodeIsAdded_ThenOnlyItsShareOfAccountsMoves() {
+        ShardRing two = new ShardRing(NODE_1 + "," + NODE_2, NODE_1, 128);
+        ShardRing three = new ShardRing(NODE_1 + "," + NODE_2 + "," + NODE_3, NODE_1, 128);
+        Map<String, Integer> owned = new HashMap<>();
+        int accounts = 10_000;
+        int moved = 0;
+
+        for (int i = 0; i < accounts; i++) {
+            String name = "account-" + i;
+            String owner = three.ownerOf(name);
+            owned.merge(owner, 1, Integer::sum);
+            if (!owner.equals(two.ownerOf(name))) {
+                assertEquals(NODE_3, owner);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > accounts / 5 && moved < accounts / 2, "moved " + moved);
+        owned.values().forEach(count -> assertTrue(count > accounts / 5, "owned " + owned));
+    }
+
+    @Test
+    void whenSelfIsNotOneOfNodes_ThenFailsOnStart() {
+        assertThrows(IllegalStateException.class, () -> new ShardRing(NODE_1 + "," + NODE_2, NODE_3, 128));
+    }
+
+    @Test
+    void whenTicketIsTaggedOnOneInstance_ThenOthersFindItsOwner() {
+        ShardRing accepting = new ShardRing(NODE_1 + "," + NODE_2 + "," + NODE_3, NODE_2, 128);
+        ShardRing other = new ShardRing(NODE_3 + "," + NODE_1 + "," + NODE_2, NODE_3, 128);
+
+        String ticket = accepting.tagTicket("6f1c2a3e-0000-4000-8000-000000000001");
+
+        assertEquals(NODE_2, other.ownerOfTicket(ticket));
+        assertEquals("6f1c2a3e-0000-4000-8000-000000000001", accepting.localTicket(ticket));
+        assertNull(other.ownerOfTicket("6f1c2a3e-0000-4000-8000-000000000001"));
+        assertNull(other.ownerOfTicket("7." + "6f1c2a3e-0000-4000-8000-000000000001"));
+    }
+}
@@ -0,0 +1,54 @@
+package aspet_simple_bank.startup;
+
+import aspet_simple_bank.service.AccountService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StartupWarmupTest {
+
+    @Mock
+    AccountService accountService;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Mock
+    TransactionStatus transactionStatus;
+
+    @InjectMocks
+    StartupWarmup startupWarmup;
+
+    @Test
+    void whenWarmupRuns_ThenServiceIsExercisedAndTransactionRolledBack() {
+        doReturn(transactionStatus).when(transactionManager).getTransaction(any());
+
+        startupWarmup.run(null);
+
+        InOrder inOrder = inOrder(accountService, transactionStatus);
+        inOrder.verify(transactionStatus).setRollbackOnly();
+        inOrder.verify(accountService).getAccounts();
+        inOrder.verify(accountService, times(2)).createAccount(anyString(), eq(StartupWarmup.PIN_CODE));
+        inOrder.verify(accountService).transfer(anyString(), anyString(), eq(StartupWarmup.PIN_CODE), anyDouble());
+    }
+
+    @Test
+    void whenWarmupFails_ThenStartupContinues() {
+        doReturn(transactionStatus).when(transactionManager).getTransaction(any());
+        doThrow(new IllegalStateException("database is not ready")).when(accountService).getAccounts();
+
+        assertDoesNotThrow(() -> startupWarmup.run(null));
+        verify(transactionManager).rollback(transactionStatus);
+        verify(accountService, never()).createAccount(anyString(), anyString());
+    }
+}
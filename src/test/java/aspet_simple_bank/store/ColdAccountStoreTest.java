@@ -0,0 +1,171 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColdAccountStoreTest {
+
+    @TempDir
+    Path directory;
+
+    ColdAccountStore coldAccountStore;
+
+    List<Account> ledger = new ArrayList<>();
+
+    @BeforeEach
+    public void initStore() throws Exception {
+        coldAccountStore = new ColdAccountStore(directory.toString(), 100L, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void closeStore() {
+        coldAccountStore.close();
+    }
+
+    @Test
+    void whenSegmentIsNotPublished_ThenAccountsAreInvisible() {
+        coldAccountStore.write(List.of(account("Bob Marley", 100.0D)));
+
+        assertFalse(coldAccountStore.contains("Bob Marley"));
+        assertTrue(coldAccountStore.readAll().isEmpty());
+    }
+
+    @Test
+    void whenSegmentIsPublished_ThenAccountsAreReadBack() {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(
+                List.of(account("Bob Marley", 100.0D), account("Dart Vader", 30.5D))));
+
+        assertTrue(coldAccountStore.contains("Bob Marley"));
+        assertEquals(2, coldAccountStore.coldAccounts());
+        assertEquals(1, coldAccountStore.coldSegments());
+        assertTrue(coldAccountStore.coldBytes() > 0);
+        assertTrue(coldAccountStore.reclaimedBytes() > 0);
+        var balances = coldAccountStore.readAll().stream()
+                .collect(Collectors.toMap(Account::getName, Account::getBalance));
+        assertEquals(100.0D, balances.get("Bob Marley"));
+        assertEquals(30.5D, balances.get("Dart Vader"));
+    }
+
+    @Test
+    void whenAllAccountsAreFaultedIn_ThenSegmentIsDeleted() {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(
+                List.of(account("Bob Marley", 100.0D), account("Dart Vader", 30.5D))));
+
+        assertTrue(coldAccountStore.faultIn("Bob Marley", ledger::add));
+        assertFalse(coldAccountStore.faultIn("Bob Marley", ledger::add));
+        assertEquals(1, coldAccountStore.coldSegments());
+        assertTrue(coldAccountStore.faultIn("Dart Vader", ledger::add));
+
+        assertEquals(2, ledger.size());
+        assertEquals("pbkdf2$1$c2FsdA==$aGFzaA==", ledger.get(0).getPinCode());
+        assertEquals(0, coldAccountStore.coldAccounts());
+        assertEquals(0, coldAccountStore.coldSegments());
+        assertEquals(0L, coldAccountStore.coldBytes());
+        assertEquals(0L, coldAccountStore.reclaimedBytes());
+        assertEquals(2L, coldAccountStore.faultInTimer().count());
+    }
+
+    @Test
+    void whenInsertFails_ThenAccountStaysCold() {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(List.of(account("Bob Marley", 100.0D))));
+
+        assertThrows(IllegalStateException.class, () -> coldAccountStore.faultIn("Bob Marley", account -> {
+            throw new IllegalStateException("insert failed");
+        }));
+
+        assertTrue(coldAccountStore.contains("Bob Marley"));
+        assertEquals(1, coldAccountStore.readAll().size());
+    }
+
+    @Test
+    void whenAccountsAreListed_ThenSegmentsAreNotRead() throws Exception {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(List.of(account("Bob Marley", 100.0D))));
+        try (var files = Files.walk(directory)) {
+            files.filter(file -> file.toString().endsWith(".gz")).forEach(file -> file.toFile().delete());
+        }
+
+        var listed = coldAccountStore.readAll();
+
+        assertEquals(1, listed.size());
+        assertEquals("Bob Marley", listed.get(0).getName());
+        assertEquals(100.0D, listed.get(0).getBalance());
+    }
+
+    @Test
+    void whenFaultInTransactionRolledBack_ThenAccountStaysCold() {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(List.of(account("Bob Marley", 100.0D))));
+
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK,
+                () -> assertTrue(coldAccountStore.faultIn("Bob Marley", ledger::add)));
+
+        assertTrue(coldAccountStore.contains("Bob Marley"));
+        assertEquals(1, coldAccountStore.coldSegments());
+        assertTrue(coldAccountStore.faultIn("Bob Marley", ledger::add));
+        assertFalse(coldAccountStore.contains("Bob Marley"));
+    }
+
+    @Test
+    void whenAccountIsFaultedInByOpenTransaction_ThenOthersWaitWithTimeout() {
+        coldAccountStore.publishOnCommit(coldAccountStore.write(
+                List.of(account("Bob Marley", 100.0D), account("Dart Vader", 30.5D))));
+
+        inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+            assertTrue(coldAccountStore.faultIn("Bob Marley", ledger::add));
+            assertTrue(coldAccountStore.contains("Bob Marley"));
+
+            var other = CompletableFuture.supplyAsync(() -> coldAccountStore.faultIn("Bob Marley", ledger::add));
+            var cause = assertThrows(ExecutionException.class, () -> other.get(5, TimeUnit.SECONDS)).getCause();
+            assertTrue(cause instanceof CannotAcquireLockException, cause.toString());
+            assertTrue(CompletableFuture.supplyAsync(() -> coldAccountStore.faultIn("Dart Vader", ledger::add)).join());
+        });
+
+        assertFalse(coldAccountStore.contains("Bob Marley"));
+        assertFalse(coldAccountStore.faultIn("Bob Marley", ledger::add));
+        assertEquals(2, ledger.size());
+    }
+
+    /**
+     * Выполняет действие с активной синхронизацией транзакции и завершает ее с заданным статусом
+     */
+    private static void inTransaction(int status, Runnable action) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            action.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+            }
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    static Account account(String name, double balance) {
+        return Account.builder()
+                .name(name)
+                .pinCode("pbkdf2$1$c2FsdA==$aGFzaA==")
+                .balance(balance)
+                .lastActivity(Instant.EPOCH)
+                .build();
+    }
+}
@@ -0,0 +1,110 @@
+package aspet_simple_bank.store;
+
+import aspet_simple_bank.model.client.domain_model.Account;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static aspet_simple_bank.store.ColdAccountStoreTest.account;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TieredAccountRepositoryImplTest {
+
+    @Mock
+    EntityManager entityManager;
+
+    @Mock
+    TypedQuery<Account> query;
+
+    @Mock
+    TypedQuery<String> pinCodeQuery;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    ColdAccountStore coldAccountStore;
+
+    TieredAccountRepositoryImpl repository;
+
+    @BeforeEach
+    public void initRepository() throws Exception {
+        coldAccountStore = new ColdAccountStore(directory.toString(), 100L, new SimpleMeterRegistry());
+        repository = new TieredAccountRepositoryImpl(coldAccountStore, transactionManager);
+        ReflectionTestUtils.setField(repository, "entityManager", entityManager);
+        lenient().doReturn(query).when(entityManager).createQuery(anyString(), eq(Account.class));
+        lenient().doReturn(query).when(query).setParameter(eq("name"), anyString());
+        lenient().doReturn(query).when(query).setLockMode(any(LockModeType.class));
+    }
+
+    @AfterEach
+    public void closeStore() {
+        coldAccountStore.close();
+    }
+
+    @Test
+    void whenFaultInCommitsBetweenHotMissAndColdCheck_ThenAccountIsFound() {
+        Account bob = account("Bob Marley", 100.0D);
+        coldAccountStore.publishOnCommit(coldAccountStore.write(List.of(bob)));
+        // первое чтение леджера не видит аккаунт, возврат другой транзакции коммитится сразу после него
+        doAnswer(invocation -> {
+            coldAccountStore.faultIn("Bob Marley", account -> { });
+            return List.of();
+        }).doReturn(List.of(bob)).when(query).getResultList();
+
+        Optional<Account> found = repository.findAccountByNameForUpdate("Bob Marley");
+
+        assertEquals(Optional.of(bob), found);
+        verify(query).setLockMode(LockModeType.NONE);
+        verify(query, times(2)).setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void whenPinCodeOfColdAccountIsRead_ThenAccountIsFaultedInAndNotLeftInContext() {
+        Account bob = account("Bob Marley", 100.0D);
+        coldAccountStore.publishOnCommit(coldAccountStore.write(List.of(bob)));
+        doReturn(pinCodeQuery).when(entityManager).createQuery(anyString(), eq(String.class));
+        doReturn(pinCodeQuery).when(pinCodeQuery).setParameter("name", "Bob Marley");
+        doReturn(pinCodeQuery).when(pinCodeQuery).setLockMode(LockModeType.NONE);
+        doReturn(List.of()).doReturn(List.of(bob.getPinCode())).when(pinCodeQuery).getResultList();
+
+        assertEquals(Optional.of(bob.getPinCode()), repository.findPinCodeByName("Bob Marley"));
+
+        InOrder faultIn = inOrder(entityManager);
+        faultIn.verify(entityManager).persist(any(Account.class));
+        faultIn.verify(entityManager).flush();
+        faultIn.verify(entityManager).detach(any(Account.class));
+        verify(entityManager, never()).createQuery(anyString(), eq(Account.class));
+        assertFalse(coldAccountStore.contains("Bob Marley"));
+    }
+
+    @Test
+    void whenAccountIsNeitherHotNorCold_ThenNothingIsFound() {
+        doReturn(List.of()).when(query).getResultList();
+
+        assertTrue(repository.findAccountByName("Bob Marley").isEmpty());
+        verify(query, times(2)).getResultList();
+        verifyNoInteractions(transactionManager);
+    }
+}
@@ -0,0 +1,174 @@
+package aspet_simple_bank.stress;
+
+import aspet_simple_bank.exceptions.BadRequestException;
+import aspet_simple_bank.model.client.dto.AccountDTO;
+import aspet_simple_bank.service.AccountService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тысячи потоков одновременно переводят деньги между несколькими "горячими" аккаунтами,
+ * изредка пополняя и снимая. После прогона сумма балансов должна сойтись с внесенными деньгами,
+ * балансы не должны уйти в минус, а потоки - зависнуть во взаимной блокировке.
+ * Пропускная способность и перцентили задержки дописываются в target/stress/results.csv.
+ * Запуск: mvn -B test -Pstress
+ */
+@Slf4j
+@Tag("stress")
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.MOCK,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:stress;LOCK_TIMEOUT=10000",
+                "spring.datasource.hikari.maximum-pool-size=32",
+                "spring.datasource.hikari.connection-timeout=120000",
+                "bank.pin.hash-iterations=1000",
+                "springdoc.api-docs.enabled=false"
+        })
+class ConcurrentTransfersStressTest {
+
+    static final int THREADS = Integer.getInteger("bench.stress.threads", 2_000);
+    static final int OPERATIONS = Integer.getInteger("bench.stress.operations", 25);
+    static final int ACCOUNTS = Integer.getInteger("bench.stress.accounts", 4);
+    static final long TIMEOUT_SECONDS = Long.getLong("bench.stress.timeout-seconds", 300L);
+
+    static final String PIN_CODE = "1234";
+    static final long INITIAL_BALANCE = 10_000L;
+
+    static final Path RESULTS = Paths.get("target", "stress", "results.csv");
+
+    @Autowired
+    AccountService accountService;
+
+    @Test
+    void whenThousandsOfThreadsTransfer_ThenMoneyIsConservedWithoutDeadlocks() throws Exception {
+        String[] names = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            names[i] = "stress-" + i + "-" + System.nanoTime();
+            accountService.createAccount(names[i], PIN_CODE);
+            accountService.makeDeposit(names[i], PIN_CODE, INITIAL_BALANCE);
+        }
+
+        AtomicLong deposited = new AtomicLong(ACCOUNTS * INITIAL_BALANCE);
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong completed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        Map<String, Integer> failures = new ConcurrentHashMap<>();
+        long[] latencies = new long[THREADS * OPERATIONS];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * OPERATIONS;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < OPERATIONS; i++) {
+                    String from = names[random.nextInt(ACCOUNTS)];
+                    String to = names[random.nextInt(ACCOUNTS)];
+                    long amount = 1 + random.nextInt(100);
+                    int kind = random.nextInt(20);
+                    long started = System.nanoTime();
+                    try {
+                        if (kind == 0) {
+                            accountService.makeDeposit(from, PIN_CODE, amount);
+                            deposited.addAndGet(amount);
+                        } else if (kind == 1) {
+                            accountService.withDrawDeposit(from, PIN_CODE, amount);
+                            withdrawn.addAndGet(amount);
+                        } else {
+                            accountService.transfer(from, to, PIN_CODE, amount);
+                        }
+                        completed.incrementAndGet();
+                    } catch (BadRequestException e) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failures.merge(e.getClass().getSimpleName(), 1, Integer::sum);
+                    }
+                    latencies[offset + i] = System.nanoTime() - started;
+                }
+            }, "stress-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        long deadline = started + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+        long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        long alive = threads.stream().filter(Thread::isAlive).count();
+
+        assertNull(deadlocked, "deadlocked threads: " + Arrays.toString(deadlocked));
+        assertEquals(0, alive, alive + " threads did not finish in " + TIMEOUT_SECONDS + " s");
+
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency > 0).sorted().toArray();
+        long p50 = percentile(sorted, 0.50);
+        long p99 = percentile(sorted, 0.99);
+        double throughput = (completed.get() + rejected.get()) / elapsedSeconds;
+        log.info(String.format(Locale.ROOT, "ConcurrentTransfersStressTest{} threads: %d, operations per thread: %d, "
+                        + "accounts: %d, completed: %d, rejected: %d, failed: %s, "
+                        + "throughput: %.0f ops/s, latency p50 %.2f ms, p99 %.2f ms.",
+                THREADS, OPERATIONS, ACCOUNTS, completed.get(), rejected.get(), failures,
+                throughput, p50 / 1e6, p99 / 1e6));
+        record(throughput, p50, p99, completed.get(), rejected.get(), failures);
+
+        double total = 0;
+        for (String name : names) {
+            AccountDTO account = accountService.getAccount(name);
+            assertTrue(account.getBalance() >= 0, name + " went negative: " + account.getBalance());
+            total += account.getBalance();
+        }
+        assertTrue(failures.isEmpty(), "failed operations: " + failures);
+        assertEquals(deposited.get() - withdrawn.get(), total, 1e-6);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    private static void record(double throughput, long p50, long p99, long completed, long rejected,
+                               Map<String, Integer> failures) throws IOException {
+        Files.createDirectories(RESULTS.getParent());
+        if (Files.notExists(RESULTS)) {
+            Files.writeString(RESULTS, "timestamp,threads,operations,accounts,completed,rejected,failed,"
+                    + "throughput_ops_s,p50_ms,p99_ms\n");
+        }
+        int failed = failures.values().stream().mapToInt(Integer::intValue).sum();
+        Files.writeString(RESULTS, String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%.0f,%.3f,%.3f%n",
+                Instant.now(), THREADS, OPERATIONS, ACCOUNTS, completed, rejected, failed,
+                throughput, p50 / 1e6, p99 / 1e6), StandardOpenOption.APPEND);
+    }
+}